@@ -0,0 +1,144 @@
+package rabbits.benchmark;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmark of a tick of the rabbits grass simulation, stepped headless. For
+ * every combination of grid size, initial rabbit density (rabbits per cell) and
+ * grass growth rate (new patches per cell and tick) a model is built once per
+ * fork, then stepped through the warmup and measurement iterations - building it
+ * in every iteration would add its allocations to the ones of the ticks. Reported
+ * is the time per tick, and as the rabbitSteps secondary result the time per
+ * rabbit step - the time of a whole tick, grass growth included, divided by the
+ * rabbits that moved. The population evolves from the configured density, so the
+ * rabbits actually stepped are counted.
+ *
+ * The simulation classes are in the default package, which classes of a package
+ * cannot name, so the model is built and stepped through method handles looked
+ * up once - a few nanoseconds per call, nothing next to a tick.
+ *
+ * Run from the benchmark directory, with the gc profiler for the allocation rate
+ * (gc.alloc.rate.norm is in bytes per tick, over all the threads):
+ *
+ * mvn -B package
+ * java -cp "target/benchmarks.jar:../lib/repast.jar:../lib/intelagent_jars/colt.jar" org.openjdk.jmh.Main -prof gc
+ *
+ * and restrict the configurations as usual, e.g. -p gridSize=256 -p density=0.1 -p threads=4.
+ * The throughput (ticks and rabbit steps per second) is reported with -bm thrpt -tu s.
+ *
+ * @author
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xms4g", "-Xmx4g" })
+@State(Scope.Thread)
+public class RabbitsGrassSimulationStepBenchmark {
+
+	private static final Class<?> MODEL = modelClass();
+	private static final MethodHandle STEP = handle("step", void.class);
+	private static final MethodHandle RABBITSCOUNT = handle("getRabbitsCount", int.class);
+	private static final MethodHandle SHUTDOWN = handle("shutdown", void.class);
+
+	@Param({ "20", "256", "1024", "4096" })
+	public int gridSize;
+
+	@Param({ "0.01", "0.1", "0.5" })
+	public double density;
+
+	@Param({ "0.001", "0.01", "0.1" })
+	public double growthRate;
+
+	@Param({ "1" })
+	public int threads;
+
+	private Object model;
+
+	/*
+	 * Rabbits stepped, reported next to the ticks
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class RabbitSteps {
+
+		public long rabbitSteps;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			this.rabbitSteps = 0;
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void buildModel() throws Throwable {
+		long cells = (long)this.gridSize * this.gridSize;
+		this.model = MODEL.getConstructor().newInstance();
+		set("setGridSize", int.class, this.gridSize);
+		set("setNumInitRabbits", int.class, (int)Math.round(cells * this.density));
+		set("setNumInitGrass", int.class, (int)Math.round(cells * this.growthRate * 10));
+		set("setGrassGrowthRate", int.class, (int)Math.max(1, Math.round(cells * this.growthRate)));
+		set("setThreads", int.class, this.threads);
+		set("setSeed", long.class, 42L);
+		set("setHeadless", boolean.class, true);
+		MODEL.getMethod("setup").invoke(this.model);
+		MODEL.getMethod("buildModel").invoke(this.model);
+	}
+
+	// The pool of a model stepped by several threads would otherwise compete with the next configurations
+	@TearDown(Level.Trial)
+	public void shutdownModel() throws Throwable {
+		SHUTDOWN.invokeExact(this.model);
+		this.model = null;
+	}
+
+	/*
+	 * One tick - returns the rabbits left so the step can never be optimized away
+	 */
+	@Benchmark
+	public int tick(RabbitSteps steps) throws Throwable {
+		steps.rabbitSteps += (int)RABBITSCOUNT.invokeExact(this.model);
+		STEP.invokeExact(this.model);
+		return (int)RABBITSCOUNT.invokeExact(this.model);
+	}
+
+	private void set(String setter, Class<?> type, Object value) throws ReflectiveOperationException {
+		MODEL.getMethod(setter, type).invoke(this.model, value);
+	}
+
+	private static Class<?> modelClass() {
+		try {
+			return Class.forName("RabbitsGrassSimulationModel");
+		} catch (ClassNotFoundException e) {
+			throw new IllegalStateException("The simulation classes are not on the class path", e);
+		}
+	}
+
+	// Handle of a public no-argument method of the model, callable on an Object
+	private static MethodHandle handle(String name, Class<?> returnType) {
+		try {
+			return MethodHandles.publicLookup().findVirtual(MODEL, name, MethodType.methodType(returnType))
+					.asType(MethodType.methodType(returnType, Object.class));
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("The model has no method " + name, e);
+		}
+	}
+}
@@ -1,6 +1,15 @@
+import java.io.IOException;
+import java.util.Arrays;
+
 public class MainRabbit {
 
-    public static void main(String[] args){
+    public static void main(String[] args) throws IOException {
+
+	// "headless" as first argument runs the model without the Repast GUI (see RabbitsGrassSimulationBatch)
+	if (args.length > 0 && args[0].equals("headless")) {
+		RabbitsGrassSimulationBatch.main(Arrays.copyOfRange(args, 1, args.length));
+		return;
+	}
 
 	RabbitsGrassSimulationModel.main(args);
 
@@ -0,0 +1,113 @@
+/**
+ * Class that implements the random number generator of a rabbits grass
+ * simulation - a xoshiro256** generator seeded through SplitMix64.
+ *
+ * Every simulation owns one instance and hands it down to its space and agents,
+ * so runs never contend on a shared generator and are fully reproducible from
+ * a single seed. Unlike java.util.Random it does no atomic updates, and unlike
+ * SplittableRandom its whole state can be read back and restored.
+ * A generator is not thread safe - use split() to get one for another thread.
+ *
+ * @author
+ */
+public class RabbitsGrassRandom {
+
+	// Number of longs making up the state of the generator
+	public static final int STATESIZE = 4;
+
+	private long s0;
+	private long s1;
+	private long s2;
+	private long s3;
+
+	// Constructor for the generator, the four state words are expanded from the seed with SplitMix64
+	public RabbitsGrassRandom(long seed) {
+		this.s0 = mix64(seed += 0x9E3779B97F4A7C15L);
+		this.s1 = mix64(seed += 0x9E3779B97F4A7C15L);
+		this.s2 = mix64(seed += 0x9E3779B97F4A7C15L);
+		this.s3 = mix64(seed + 0x9E3779B97F4A7C15L);
+	}
+
+	/*
+	 * SplitMix64 finalizer - turns consecutive inputs into unrelated outputs
+	 */
+	public static long mix64(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	public long nextLong() {
+		long result = Long.rotateLeft(this.s1 * 5, 7) * 9;
+		long t = this.s1 << 17;
+
+		this.s2 ^= this.s0;
+		this.s3 ^= this.s1;
+		this.s1 ^= this.s2;
+		this.s0 ^= this.s3;
+		this.s2 ^= t;
+		this.s3 = Long.rotateLeft(this.s3, 45);
+
+		return result;
+	}
+
+	public int nextInt() {
+		return (int)(this.nextLong() >>> 32);
+	}
+
+	/*
+	 * Returns a uniformly distributed int in [0 ; bound) (Lemire's multiply-shift, rejection keeps it unbiased)
+	 */
+	public int nextInt(int bound) {
+		if (bound <= 0) {
+			throw new IllegalArgumentException("bound must be positive: " + bound);
+		}
+		long product = (this.nextLong() >>> 32) * bound;
+		int low = (int)product;
+		if (Integer.compareUnsigned(low, bound) < 0) {
+			int threshold = Integer.remainderUnsigned(-bound, bound);
+			while (Integer.compareUnsigned(low, threshold) < 0) {
+				product = (this.nextLong() >>> 32) * bound;
+				low = (int)product;
+			}
+		}
+		return (int)(product >>> 32);
+	}
+
+	/*
+	 * Returns a uniformly distributed double in [0 ; 1)
+	 */
+	public double nextDouble() {
+		return (this.nextLong() >>> 11) * 0x1.0p-53;
+	}
+
+	/*
+	 * Returns a new, independent generator seeded from this one (advances this generator)
+	 */
+	public RabbitsGrassRandom split() {
+		return new RabbitsGrassRandom(this.nextLong() ^ mix64(this.nextLong()));
+	}
+
+	/*
+	 * Copies the state of the generator into state[offset .. offset + STATESIZE)
+	 */
+	public void getState(long[] state, int offset) {
+		state[offset] = this.s0;
+		state[offset + 1] = this.s1;
+		state[offset + 2] = this.s2;
+		state[offset + 3] = this.s3;
+	}
+
+	/*
+	 * Restores a state previously read with getState
+	 */
+	public void setState(long[] state, int offset) {
+		this.s0 = state[offset];
+		this.s1 = state[offset + 1];
+		this.s2 = state[offset + 2];
+		this.s3 = state[offset + 3];
+		if ((this.s0 | this.s1 | this.s2 | this.s3) == 0) {
+			throw new IllegalArgumentException("The all-zero state is not a valid generator state");
+		}
+	}
+}
@@ -0,0 +1,242 @@
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Class that runs the rabbits grass simulation headless - the model is built
+ * without a display surface or sequence graphs and stepped as fast as possible
+ * for a fixed number of ticks. The population and grass time series is written
+ * to a CSV file (or to a compact binary file if the output name ends in ".bin",
+ * see BinarySeriesWriter)
+ * and the throughput is reported at the end of the run.
+ *
+ * Usage: RabbitsGrassSimulationBatch [Ticks=n] [Output=file] [Resume=checkpoint] [Metrics=file] [Events=file] [<InitParam>=value ...]
+ * where <InitParam> is any of the model parameters, e.g. GridSize=200, Storage=2 (fields in a mapped file),
+ * CheckpointInterval=100000 or CheckpointFile=run.checkpoint, or Seed. A resumed run takes its parameters from the checkpoint
+ * and continues up to tick Ticks; its series starts with the tick of the checkpoint. Metrics additionally
+ * streams the per tick metrics through a RabbitsGrassSimulationMetricsRecorder, and Events logs every birth
+ * and death to a RabbitsGrassSimulationEventLog.
+ *
+ * @author
+ */
+public class RabbitsGrassSimulationBatch {
+
+	private static final int DEFAULTTICKS = 1000;
+	private static final String DEFAULTOUTPUT = "rabbits_grass_series.csv";
+
+	// Header of the binary series, and size of its rows
+	public static final int BINARYMAGIC = 0x52475353;
+	public static final int BINARYVERSION = 3;
+	public static final int BINARYRECORDBYTES = 4 * 4 + 3 * 8;
+
+	public static void main(String[] args) throws IOException {
+		int ticks = DEFAULTTICKS;
+		String output = DEFAULTOUTPUT;
+		String resume = null;
+		String metrics = null;
+		String events = null;
+
+		RabbitsGrassSimulationModel model = new RabbitsGrassSimulationModel();
+		for (String arg : args) {
+			int separator = arg.indexOf('=');
+			if (separator < 0) {
+				throw new IllegalArgumentException("Expected <Name>=<value>, got: " + arg);
+			}
+			String name = arg.substring(0, separator);
+			String value = arg.substring(separator + 1);
+
+			if (name.equals("Ticks")) {
+				ticks = Integer.parseInt(value);
+			} else if (name.equals("Output")) {
+				output = value;
+			} else if (name.equals("Events")) {
+				events = value;
+			} else if (name.equals("Metrics")) {
+				metrics = value;
+			} else if (name.equals("Resume")) {
+				resume = value;
+			} else if (name.equals("CheckpointFile")) {
+				model.setCheckpointFile(value);
+			} else {
+				setParameter(model, name, Long.parseLong(value));
+			}
+		}
+
+		RabbitsGrassSimulationMetricsRecorder recorder = null;
+		if (metrics != null) {
+			recorder = new RabbitsGrassSimulationMetricsRecorder(metrics);
+			model.setMetricsSink(recorder);
+		}
+		RabbitsGrassSimulationEventLog eventLog = null;
+		if (events != null) {
+			eventLog = new RabbitsGrassSimulationEventLog(events);
+			model.setEventLog(eventLog);
+		}
+
+		long start = System.nanoTime();
+		long firstTick;
+		long rabbitSteps;
+		try {
+			start(model, resume);
+			firstTick = model.getTick();
+			rabbitSteps = step(model, ticks, output);
+		} finally {
+			model.shutdown();
+			if (recorder != null) {
+				recorder.close();
+			}
+			if (eventLog != null) {
+				eventLog.close();
+			}
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		// A resumed run only steps the ticks after the one of its checkpoint
+		long ticksRun = model.getTick() - firstTick;
+
+		System.out.println("Ran " + ticksRun + " ticks in " + String.format("%.3f", seconds) + " s: "
+				+ String.format("%.1f", ticksRun / seconds) + " ticks/s, "
+				+ String.format("%.0f", rabbitSteps / seconds) + " rabbit steps/s");
+		System.out.println("Time series written to " + output);
+		if (eventLog != null) {
+			System.out.println(eventLog.getEventsCount() + " events logged to " + events);
+		}
+		if (recorder != null) {
+			System.out.println("Metrics written to " + metrics + " (" + recorder.getDroppedCount() + " records dropped)");
+		}
+	}
+
+	/*
+	 * Sets the model parameter called name (as listed by getInitParam, or Seed) to the given value
+	 */
+	public static void setParameter(RabbitsGrassSimulationModel model, String name, long value) {
+		try {
+			try {
+				Method setter = RabbitsGrassSimulationModel.class.getMethod("set" + name, int.class);
+				setter.invoke(model, Math.toIntExact(value));
+			} catch (NoSuchMethodException e) {
+				Method setter = RabbitsGrassSimulationModel.class.getMethod("set" + name, long.class);
+				setter.invoke(model, value);
+			}
+		} catch (NoSuchMethodException e) {
+			throw new IllegalArgumentException("Unknown model parameter: " + name);
+		} catch (IllegalAccessException | InvocationTargetException e) {
+			throw new IllegalArgumentException("Could not set model parameter " + name, e);
+		}
+	}
+
+	/*
+	 * Builds the model headless and runs it for the given number of ticks, writing one row of the
+	 * time series per tick (plus the initial state as tick 0). Returns the number of rabbit steps performed.
+	 */
+	public static long run(RabbitsGrassSimulationModel model, int ticks, String output) throws IOException {
+		return run(model, ticks, output, null);
+	}
+
+	/*
+	 * Same as run, but if resume is not null the model is restored from that checkpoint instead of
+	 * being built, and is stepped from the tick of the checkpoint up to the given tick
+	 */
+	public static long run(RabbitsGrassSimulationModel model, int ticks, String output, String resume) throws IOException {
+		start(model, resume);
+		return step(model, ticks, output);
+	}
+
+	/*
+	 * Builds the model headless, or restores it from the checkpoint resume if it is not null
+	 */
+	public static void start(RabbitsGrassSimulationModel model, String resume) throws IOException {
+		model.setHeadless(true);
+		model.setup();
+		if (resume != null) {
+			model.loadCheckpoint(resume);
+		} else {
+			model.buildModel();
+		}
+	}
+
+	/*
+	 * Steps the started model from its current tick up to the given tick, writing one row of the time
+	 * series per tick (starting with the current one). Returns the number of rabbit steps performed.
+	 */
+	public static long step(RabbitsGrassSimulationModel model, int ticks, String output) throws IOException {
+		int firstTick = Math.toIntExact(model.getTick());
+
+		long rabbitSteps = 0;
+		SeriesWriter writer = output.endsWith(".bin") ? new BinarySeriesWriter(output) : new CsvSeriesWriter(output);
+		try {
+			writer.write(firstTick, model);
+			for (int tick = firstTick + 1; tick <= ticks; tick++) {
+				rabbitSteps += model.getRabbitsCount();
+				model.step();
+				writer.write(tick, model);
+			}
+		} finally {
+			writer.close();
+		}
+		return rabbitSteps;
+	}
+
+	/*
+	 * Writes one row of the time series per tick
+	 */
+	private interface SeriesWriter extends Closeable {
+		void write(int tick, RabbitsGrassSimulationModel model) throws IOException;
+	}
+
+	private static class CsvSeriesWriter implements SeriesWriter {
+
+		private BufferedWriter out;
+
+		public CsvSeriesWriter(String fileName) throws IOException {
+			this.out = new BufferedWriter(new FileWriter(fileName), 1 << 16);
+			this.out.write("tick,rabbits,births,deaths,rabbitEnergy,grassEnergy,grassPatches\n");
+		}
+
+		public void write(int tick, RabbitsGrassSimulationModel model) throws IOException {
+			RabbitsGrassSimulationSpace space = model.getSpace();
+			this.out.write(tick + "," + model.getRabbitsCount() + "," + model.getLastBirths() + ","
+					+ model.getLastDeaths() + "," + model.getRabbitEnergy() + ","
+					+ space.getTotalGrassEnergy() + "," + space.getGrassPatchesCount() + "\n");
+		}
+
+		public void close() throws IOException {
+			this.out.close();
+		}
+	}
+
+	/*
+	 * The binary series starts with BINARYMAGIC and BINARYVERSION (ints), followed by rows of BINARYRECORDBYTES:
+	 * the columns of the CSV in the same order, as big-endian ints except the rabbit energy and the grass energy and patches (longs)
+	 */
+	private static class BinarySeriesWriter implements SeriesWriter {
+
+		private DataOutputStream out;
+
+		public BinarySeriesWriter(String fileName) throws IOException {
+			this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName), 1 << 16));
+			this.out.writeInt(BINARYMAGIC);
+			this.out.writeInt(BINARYVERSION);
+		}
+
+		public void write(int tick, RabbitsGrassSimulationModel model) throws IOException {
+			RabbitsGrassSimulationSpace space = model.getSpace();
+			this.out.writeInt(tick);
+			this.out.writeInt(model.getRabbitsCount());
+			this.out.writeInt(model.getLastBirths());
+			this.out.writeInt(model.getLastDeaths());
+			this.out.writeLong(model.getRabbitEnergy());
+			this.out.writeLong(space.getTotalGrassEnergy());
+			this.out.writeLong(space.getGrassPatchesCount());
+		}
+
+		public void close() throws IOException {
+			this.out.close();
+		}
+	}
+}
@@ -0,0 +1,178 @@
+import java.util.Arrays;
+
+/**
+ * Class that implements a map from cell index (y * sizeX + x, as a long so that
+ * grids beyond 2^31 cells can be indexed) to a non-zero int, for the sparse
+ * representations of the simulation space. Open addressing with linear probing
+ * over two primitive arrays - no boxing and no objects per entry. A value of 0
+ * means "absent": putting 0 removes the entry. Removal shifts the following
+ * entries back instead of leaving tombstones, so lookups never slow down.
+ *
+ * The table is kept between 1/8 and 1/2 full, so it takes 24 to 96 bytes per entry.
+ *
+ * @author
+ */
+public class RabbitsGrassSimulationCellMap {
+
+	// Marks an unused slot - cell indexes are never negative
+	private static final long EMPTY = -1;
+	private static final int MINCAPACITY = 16;
+
+	private long[] keys;
+	private int[] values;
+	private int size;
+	private int mask;
+	// Shift turning the 64 bits hash of a key into a slot of the table
+	private int shift;
+
+	// Constructor for an empty cell map
+	public RabbitsGrassSimulationCellMap() {
+		this.allocate(MINCAPACITY);
+	}
+
+	private void allocate(int capacity) {
+		this.keys = new long[capacity];
+		Arrays.fill(this.keys, EMPTY);
+		this.values = new int[capacity];
+		this.mask = capacity - 1;
+		this.shift = Long.numberOfLeadingZeros(capacity - 1);
+		this.size = 0;
+	}
+
+	// Fibonacci hashing - the high bits of the product are well mixed even for consecutive cells
+	private int slot(long key) {
+		return (int)((key * 0x9E3779B97F4A7C15L) >>> this.shift);
+	}
+
+	/*
+	 * Returns the value of the given cell, 0 if the cell is not in the map
+	 */
+	public int get(long key) {
+		int slot = this.slot(key);
+		while (true) {
+			long k = this.keys[slot];
+			if (k == key) {
+				return this.values[slot];
+			}
+			if (k == EMPTY) {
+				return 0;
+			}
+			slot = (slot + 1) & this.mask;
+		}
+	}
+
+	/*
+	 * Sets the value of the given cell (0 removes it) and returns its previous value
+	 */
+	public int put(long key, int value) {
+		if (value == 0) {
+			return this.remove(key);
+		}
+		int slot = this.slot(key);
+		while (true) {
+			long k = this.keys[slot];
+			if (k == key) {
+				int previous = this.values[slot];
+				this.values[slot] = value;
+				return previous;
+			}
+			if (k == EMPTY) {
+				this.keys[slot] = key;
+				this.values[slot] = value;
+				this.size++;
+				if (this.size * 2 > this.keys.length) {
+					this.rehash(this.keys.length * 2);
+				}
+				return 0;
+			}
+			slot = (slot + 1) & this.mask;
+		}
+	}
+
+	/*
+	 * Removes the given cell from the map and returns its value (0 if it was not in the map)
+	 */
+	public int remove(long key) {
+		int slot = this.slot(key);
+		while (true) {
+			long k = this.keys[slot];
+			if (k == key) {
+				int previous = this.values[slot];
+				this.removeAt(slot);
+				if (this.size * 8 < this.keys.length && this.keys.length > MINCAPACITY) {
+					this.rehash(this.keys.length / 2);
+				}
+				return previous;
+			}
+			if (k == EMPTY) {
+				return 0;
+			}
+			slot = (slot + 1) & this.mask;
+		}
+	}
+
+	// Empties the given slot and moves back the entries of the same probe run that could not reach their slot
+	private void removeAt(int hole) {
+		int slot = hole;
+		while (true) {
+			slot = (slot + 1) & this.mask;
+			long k = this.keys[slot];
+			if (k == EMPTY) {
+				break;
+			}
+			// The entry can fill the hole if its home slot is not between the hole and itself
+			int home = this.slot(k);
+			if (((slot - home) & this.mask) >= ((slot - hole) & this.mask)) {
+				this.keys[hole] = k;
+				this.values[hole] = this.values[slot];
+				hole = slot;
+			}
+		}
+		this.keys[hole] = EMPTY;
+		this.values[hole] = 0;
+		this.size--;
+	}
+
+	private void rehash(int capacity) {
+		long[] oldKeys = this.keys;
+		int[] oldValues = this.values;
+		this.allocate(Math.max(capacity, MINCAPACITY));
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != EMPTY) {
+				int slot = this.slot(oldKeys[i]);
+				while (this.keys[slot] != EMPTY) {
+					slot = (slot + 1) & this.mask;
+				}
+				this.keys[slot] = oldKeys[i];
+				this.values[slot] = oldValues[i];
+				this.size++;
+			}
+		}
+	}
+
+	/*
+	 * Removes every entry
+	 */
+	public void clear() {
+		this.allocate(MINCAPACITY);
+	}
+
+	public int size() {
+		return this.size;
+	}
+
+	/*
+	 * Iteration over the table: slots 0 .. capacity()-1, keyAt returns -1 for an unused slot
+	 */
+	public int capacity() {
+		return this.keys.length;
+	}
+
+	public long keyAt(int slot) {
+		return this.keys[slot];
+	}
+
+	public int valueAt(int slot) {
+		return this.values[slot];
+	}
+}
@@ -0,0 +1,220 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Class that reads and writes the binary snapshots (checkpoints) of a rabbits
+ * grass simulation. A checkpoint is a flat sequence of big-endian ints and longs
+ * read and written sequentially through one reused direct buffer, so arbitrarily
+ * large grids are copied with bulk transfers and never go through an intermediate
+ * stream. Nothing stays mapped, so a replaced checkpoint releases its disk blocks
+ * as soon as it is closed.
+ *
+ * The content is laid out by the model, the space and the population themselves
+ * (see RabbitsGrassSimulationModel.saveCheckpoint); this class only adds a header
+ * identifying the format. A checkpoint is first written to a temporary file which
+ * replaces the previous checkpoint once complete, so a run killed while writing
+ * still leaves the last good checkpoint behind.
+ *
+ * @author
+ */
+public class RabbitsGrassSimulationCheckpoint implements Closeable {
+
+	private static final int MAGIC = 0x52475343;
+	private static final int VERSION = 4;
+	// Size of the buffer between the values and the file
+	private static final int BUFFERSIZE = 1 << 20;
+
+	private Path path;
+	// File actually written - a temporary file next to path until commit, path itself when reading
+	private Path file;
+	private FileChannel channel;
+	private boolean writing;
+	// Values not written to the file yet when writing, values not read yet when reading
+	private ByteBuffer buffer;
+	private boolean committed;
+
+	// Constructor for the checkpoint object, use create or open
+	private RabbitsGrassSimulationCheckpoint(Path path, Path file, boolean writing) throws IOException {
+		this.path = path;
+		this.file = file;
+		this.writing = writing;
+		if (writing) {
+			this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+					StandardOpenOption.WRITE);
+		} else {
+			this.channel = FileChannel.open(file, StandardOpenOption.READ);
+		}
+		this.buffer = ByteBuffer.allocateDirect(BUFFERSIZE);
+		if (!writing) {
+			// Nothing read yet
+			this.buffer.limit(0);
+		}
+		this.committed = false;
+	}
+
+	/*
+	 * Starts writing a new checkpoint to the given file - nothing replaces the file before commit is called
+	 */
+	public static RabbitsGrassSimulationCheckpoint create(String fileName) throws IOException {
+		Path path = Paths.get(fileName).toAbsolutePath();
+		Path file = path.resolveSibling(path.getFileName() + ".tmp");
+		RabbitsGrassSimulationCheckpoint checkpoint = new RabbitsGrassSimulationCheckpoint(path, file, true);
+		checkpoint.putInt(MAGIC);
+		checkpoint.putInt(VERSION);
+		return checkpoint;
+	}
+
+	/*
+	 * Opens an existing checkpoint for reading and checks its header
+	 */
+	public static RabbitsGrassSimulationCheckpoint open(String fileName) throws IOException {
+		Path path = Paths.get(fileName).toAbsolutePath();
+		RabbitsGrassSimulationCheckpoint checkpoint = new RabbitsGrassSimulationCheckpoint(path, path, false);
+		try {
+			if (checkpoint.getInt() != MAGIC) {
+				throw new IOException(fileName + " is not a rabbits grass simulation checkpoint");
+			}
+			int version = checkpoint.getInt();
+			if (version != VERSION) {
+				throw new IOException("Unsupported checkpoint version " + version + " in " + fileName);
+			}
+		} catch (IOException e) {
+			checkpoint.close();
+			throw e;
+		}
+		return checkpoint;
+	}
+
+	/*
+	 * Returns the buffer with at least the given number of bytes remaining - room for
+	 * them when writing (writing out the buffer if it is full), values when reading
+	 * (reading the next part of the file if the buffer is used up)
+	 */
+	private ByteBuffer buffer(int bytes) throws IOException {
+		if (this.buffer.remaining() < bytes) {
+			if (this.writing) {
+				this.flush();
+			} else {
+				this.buffer.compact();
+				while (this.buffer.position() < bytes) {
+					if (this.channel.read(this.buffer) < 0) {
+						throw new IOException("Checkpoint " + this.path + " is truncated");
+					}
+				}
+				this.buffer.flip();
+			}
+		}
+		return this.buffer;
+	}
+
+	// Writes out the values in the buffer
+	private void flush() throws IOException {
+		this.buffer.flip();
+		while (this.buffer.hasRemaining()) {
+			this.channel.write(this.buffer);
+		}
+		this.buffer.clear();
+	}
+
+	public void putInt(int value) throws IOException {
+		this.buffer(4).putInt(value);
+	}
+
+	public int getInt() throws IOException {
+		return this.buffer(4).getInt();
+	}
+
+	public void putLong(long value) throws IOException {
+		this.buffer(8).putLong(value);
+	}
+
+	public long getLong() throws IOException {
+		return this.buffer(8).getLong();
+	}
+
+	/*
+	 * Writes values[0 .. length) with bulk transfers, buffer by buffer
+	 */
+	public void putInts(int[] values, int length) throws IOException {
+		int offset = 0;
+		while (offset < length) {
+			ByteBuffer buffer = this.buffer(4);
+			int count = Math.min(length - offset, buffer.remaining() / 4);
+			IntBuffer ints = buffer.asIntBuffer();
+			ints.put(values, offset, count);
+			buffer.position(buffer.position() + 4 * count);
+			offset += count;
+		}
+	}
+
+	/*
+	 * Reads length ints into values[0 .. length)
+	 */
+	public void getInts(int[] values, int length) throws IOException {
+		int offset = 0;
+		while (offset < length) {
+			ByteBuffer buffer = this.buffer(4);
+			int count = Math.min(length - offset, buffer.remaining() / 4);
+			IntBuffer ints = buffer.asIntBuffer();
+			ints.get(values, offset, count);
+			buffer.position(buffer.position() + 4 * count);
+			offset += count;
+		}
+	}
+
+	public void putLongs(long[] values, int length) throws IOException {
+		int offset = 0;
+		while (offset < length) {
+			ByteBuffer buffer = this.buffer(8);
+			int count = Math.min(length - offset, buffer.remaining() / 8);
+			LongBuffer longs = buffer.asLongBuffer();
+			longs.put(values, offset, count);
+			buffer.position(buffer.position() + 8 * count);
+			offset += count;
+		}
+	}
+
+	public void getLongs(long[] values, int length) throws IOException {
+		int offset = 0;
+		while (offset < length) {
+			ByteBuffer buffer = this.buffer(8);
+			int count = Math.min(length - offset, buffer.remaining() / 8);
+			LongBuffer longs = buffer.asLongBuffer();
+			longs.get(values, offset, count);
+			buffer.position(buffer.position() + 8 * count);
+			offset += count;
+		}
+	}
+
+	/*
+	 * Flushes a checkpoint being written to disk and moves it in place of the previous one
+	 */
+	public void commit() throws IOException {
+		this.flush();
+		this.channel.force(true);
+		this.channel.close();
+		Files.move(this.file, this.path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		this.committed = true;
+	}
+
+	/*
+	 * Closes the file - a checkpoint being written that was not committed is discarded
+	 */
+	public void close() throws IOException {
+		if (this.channel.isOpen()) {
+			this.channel.close();
+		}
+		if (this.writing && !this.committed) {
+			Files.deleteIfExists(this.file);
+		}
+	}
+}
@@ -0,0 +1,317 @@
+/**
+ * Class that decouples the display of the rabbits grass simulation from its
+ * ticks. The simulation thread publishes a copy of the grass field and of the
+ * rabbits at most frameRate times per second, and a Swing timer draws the latest
+ * published copy on the event dispatch thread - so the simulation runs at full
+ * speed and never waits for the display to be painted.
+ *
+ * Frames are handed over without locks and without ever being shared: the
+ * simulation fills a frame it owns and publishes it in the pending slot, the
+ * display takes it from there and shows it until a newer one is taken, then hands
+ * it back through the released slot for the simulation to fill again. A frame is
+ * only ever written while no other thread can read it, so any repaint - timer
+ * driven, or requested by Swing itself on expose or resize - draws a whole frame.
+ * The grass display reads the shown frame through the Discrete2DSpace interface
+ * of this class, and the agents display (and its probes) through the one of
+ * getRabbitsSpace, on the event dispatch thread.
+ *
+ * @author
+ */
+import java.awt.Dimension;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.swing.Timer;
+
+import uchicago.src.collection.BaseMatrix;
+import uchicago.src.sim.gui.DisplaySurface;
+import uchicago.src.sim.space.Discrete2DSpace;
+
+public class RabbitsGrassSimulationDisplaySnapshot implements Discrete2DSpace {
+
+	/*
+	 * Copy of the grass field and of the rabbits at some tick
+	 */
+	private static class Frame {
+		private int[] grass;
+		private int[] ids = new int[0];
+		private int[] xs = new int[0];
+		private int[] ys = new int[0];
+		private int[] energies = new int[0];
+		private int rabbitsCount;
+		private long tick;
+	}
+
+	private int sizeX;
+	private int sizeY;
+	// Minimum time between two published frames
+	private long frameIntervalNanos;
+	private long lastPublished;
+
+	// Frame filled by the simulation (simulation thread only)
+	private Frame back;
+	// Latest published frame not taken by the display yet, and frame the display is done with
+	private AtomicReference<Frame> pending;
+	private AtomicReference<Frame> released;
+	// Frame drawn by the display (event dispatch thread only)
+	private Frame shown;
+
+	private Timer timer;
+	private BaseMatrix matrix;
+	private RabbitsSpace rabbitsSpace;
+
+	// Constructor for the snapshot object of a sizeX * sizeY space, published at most frameRate times per second
+	public RabbitsGrassSimulationDisplaySnapshot(int sizeX, int sizeY, int frameRate) {
+		if (frameRate <= 0) {
+			throw new IllegalArgumentException("The frame rate must be positive, got " + frameRate);
+		}
+		this.sizeX = sizeX;
+		this.sizeY = sizeY;
+		this.frameIntervalNanos = 1000000000L / frameRate;
+		this.lastPublished = System.nanoTime() - this.frameIntervalNanos;
+		this.back = new Frame();
+		this.back.grass = new int[sizeX * sizeY];
+		this.pending = new AtomicReference<Frame>();
+		this.released = new AtomicReference<Frame>();
+		this.shown = new Frame();
+		this.shown.grass = new int[sizeX * sizeY];
+		this.shown.tick = -1;
+		this.matrix = new SpaceMatrix(this);
+		this.rabbitsSpace = new RabbitsSpace();
+	}
+
+	/*
+	 * Called by the simulation thread after every tick - copies the space and the rabbits into a new frame
+	 * if the last one was published at least a frame interval ago
+	 */
+	public void publish(RabbitsGrassSimulationSpace space, RabbitsGrassSimulationPopulation rabbits, long tick) {
+		long now = System.nanoTime();
+		if (now - this.lastPublished < this.frameIntervalNanos) {
+			return;
+		}
+
+		Frame frame = this.back;
+		space.copyGrass(frame.grass);
+		int count = rabbits.size();
+		if (frame.ids.length < count) {
+			int capacity = Math.max(count, frame.ids.length * 2);
+			frame.ids = new int[capacity];
+			frame.xs = new int[capacity];
+			frame.ys = new int[capacity];
+			frame.energies = new int[capacity];
+		}
+		for (int slot = 0; slot < count; slot++) {
+			frame.ids[slot] = rabbits.getID(slot);
+			frame.xs[slot] = rabbits.getX(slot);
+			frame.ys[slot] = rabbits.getY(slot);
+			frame.energies[slot] = rabbits.getEnergy(slot);
+		}
+		frame.rabbitsCount = count;
+		frame.tick = tick;
+
+		// Never waits for the display - a frame it did not take yet is replaced, and filled next
+		Frame next = this.pending.getAndSet(frame);
+		if (next == null) {
+			next = this.released.getAndSet(null);
+		}
+		if (next == null) {
+			// Only while the display holds every other frame
+			next = new Frame();
+			next.grass = new int[this.sizeX * this.sizeY];
+		}
+		this.back = next;
+		this.lastPublished = now;
+	}
+
+	/*
+	 * Starts drawing the published frames on the given display surface, refreshing the given agent views
+	 * (the object list of the agents display) from every new frame
+	 */
+	public void start(final DisplaySurface surface, final ArrayList<RabbitsGrassSimulationAgent> rabbitViews) {
+		this.stop();
+		this.timer = new Timer((int)Math.max(1, this.frameIntervalNanos / 1000000), new ActionListener() {
+			public void actionPerformed(ActionEvent event) {
+				draw(surface, rabbitViews);
+			}
+		});
+		this.timer.start();
+	}
+
+	public void stop() {
+		if (this.timer != null) {
+			this.timer.stop();
+			this.timer = null;
+		}
+	}
+
+	/*
+	 * Takes the last published frame, if any, and draws it (on the event dispatch thread)
+	 */
+	private void draw(DisplaySurface surface, ArrayList<RabbitsGrassSimulationAgent> rabbitViews) {
+		Frame frame = this.pending.getAndSet(null);
+		if (frame == null) {
+			return;
+		}
+		this.released.set(this.shown);
+		this.shown = frame;
+
+		for (int slot = 0; slot < frame.rabbitsCount; slot++) {
+			RabbitsGrassSimulationAgent view;
+			if (slot < rabbitViews.size()) {
+				view = rabbitViews.get(slot);
+			} else {
+				view = new RabbitsGrassSimulationAgent();
+				rabbitViews.add(view);
+			}
+			view.set(frame.ids[slot], frame.xs[slot], frame.ys[slot], frame.energies[slot]);
+		}
+		while (rabbitViews.size() > frame.rabbitsCount) {
+			rabbitViews.remove(rabbitViews.size() - 1);
+		}
+		// Already on the event dispatch thread - updateDisplay would wait for it
+		surface.updateDisplayDirect();
+	}
+
+	/*
+	 * Read-only matrix view over the grass or the rabbits of the shown frame
+	 */
+	private static class SpaceMatrix implements BaseMatrix {
+
+		private Discrete2DSpace space;
+
+		public SpaceMatrix(Discrete2DSpace space) {
+			this.space = space;
+		}
+
+		public Object get(int col, int row) {
+			return this.space.getObjectAt(col, row);
+		}
+
+		public void put(int col, int row, Object obj) {
+			this.space.putObjectAt(col, row, obj);
+		}
+
+		public Object remove(int col, int row) {
+			throw new UnsupportedOperationException("The display snapshot is read-only");
+		}
+
+		public int size() {
+			return this.space.getSizeX() * this.space.getSizeY();
+		}
+
+		public int getNumRows() {
+			return this.space.getSizeY();
+		}
+
+		public int getNumCols() {
+			return this.space.getSizeX();
+		}
+
+		public void trim() {
+		}
+	}
+
+	/*
+	 * Read-only view over the rabbits of the shown frame - a non-empty cell is reported as a freshly
+	 * created RabbitsGrassSimulationAgent view of the rabbit shown there. Only probes look up cells,
+	 * so the rabbits of the frame are simply scanned.
+	 */
+	private class RabbitsSpace implements Discrete2DSpace {
+
+		private BaseMatrix matrix = new SpaceMatrix(this);
+
+		private int slotAt(int x, int y) {
+			Frame frame = shown;
+			for (int slot = 0; slot < frame.rabbitsCount; slot++) {
+				if (frame.xs[slot] == x && frame.ys[slot] == y) {
+					return slot;
+				}
+			}
+			return -1;
+		}
+
+		public int getSizeX() {
+			return sizeX;
+		}
+
+		public int getSizeY() {
+			return sizeY;
+		}
+
+		public Dimension getSize() {
+			return new Dimension(sizeX, sizeY);
+		}
+
+		public Object getObjectAt(int x, int y) {
+			int slot = this.slotAt(x, y);
+			if (slot < 0) {
+				return null;
+			}
+			RabbitsGrassSimulationAgent view = new RabbitsGrassSimulationAgent();
+			view.set(shown.ids[slot], shown.xs[slot], shown.ys[slot], shown.energies[slot]);
+			return view;
+		}
+
+		public double getValueAt(int x, int y) {
+			return (this.slotAt(x, y) < 0) ? 0 : 1;
+		}
+
+		public void putObjectAt(int x, int y, Object object) {
+			throw new UnsupportedOperationException("The display snapshot is read-only");
+		}
+
+		public void putValueAt(int x, int y, double value) {
+			throw new UnsupportedOperationException("The display snapshot is read-only");
+		}
+
+		public BaseMatrix getMatrix() {
+			return this.matrix;
+		}
+	}
+
+	/*
+	 * Space of the rabbits of the shown frame, for the agents display (on the event dispatch thread)
+	 */
+	public Discrete2DSpace getRabbitsSpace() {
+		return this.rabbitsSpace;
+	}
+
+	public int getSizeX() {
+		return this.sizeX;
+	}
+
+	public int getSizeY() {
+		return this.sizeY;
+	}
+
+	public Dimension getSize() {
+		return new Dimension(this.sizeX, this.sizeY);
+	}
+
+	public Object getObjectAt(int x, int y) {
+		return Integer.valueOf(this.shown.grass[y * this.sizeX + x]);
+	}
+
+	public double getValueAt(int x, int y) {
+		return this.shown.grass[y * this.sizeX + x];
+	}
+
+	public void putObjectAt(int x, int y, Object object) {
+		throw new UnsupportedOperationException("The display snapshot is read-only");
+	}
+
+	public void putValueAt(int x, int y, double value) {
+		throw new UnsupportedOperationException("The display snapshot is read-only");
+	}
+
+	public BaseMatrix getMatrix() {
+		return this.matrix;
+	}
+
+	// Tick of the shown frame (-1 before the first one), on the event dispatch thread
+	public long getTick() {
+		return this.shown.tick;
+	}
+}
@@ -0,0 +1,117 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Class that writes the append-only event log of a rabbits grass simulation -
+ * one fixed size record per birth and per death of a rabbit. Records are
+ * collected in a direct buffer and written to the file channel a batch at a time,
+ * so logging costs a few stores per event on the simulation thread.
+ *
+ * The file starts with a header of HEADERBYTES (magic, version, record size as
+ * big-endian ints) followed by records of RECORDBYTES: tick (long), type, rabbit
+ * ID, x, y and energy (ints). The rabbits of the initial population are logged as
+ * births at tick 0; a run resumed from a checkpoint instead starts with one RESTORED
+ * record per rabbit of the checkpoint, at the tick of the checkpoint. See
+ * RabbitsGrassSimulationEventReplay to read a log back.
+ *
+ * @author
+ */
+public class RabbitsGrassSimulationEventLog implements Closeable {
+
+	public static final int MAGIC = 0x5247454C;
+	// Version 1 logs are the same without RESTORED records
+	public static final int VERSION = 2;
+	public static final int HEADERBYTES = 12;
+	public static final int RECORDBYTES = 28;
+	// Types of the events
+	public static final int BIRTH = 0;
+	public static final int DEATH = 1;
+	// Rabbit alive at the start of a resumed run, born before the log started
+	public static final int RESTORED = 2;
+
+	// Records buffered before a write to the file
+	private static final int BATCHRECORDS = 1 << 14;
+
+	private FileChannel channel;
+	private ByteBuffer buffer;
+	// Tick stamped on the events being logged
+	private long tick;
+	private long eventsCount;
+
+	// Constructor for the event log object - creates (or truncates) the given file
+	public RabbitsGrassSimulationEventLog(String fileName) throws IOException {
+		this.channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		this.buffer = ByteBuffer.allocateDirect(BATCHRECORDS * RECORDBYTES);
+		this.buffer.putInt(MAGIC);
+		this.buffer.putInt(VERSION);
+		this.buffer.putInt(RECORDBYTES);
+		this.tick = 0;
+		this.eventsCount = 0;
+	}
+
+	/*
+	 * Sets the tick of the events logged from now on
+	 */
+	public void setTick(long tick) {
+		this.tick = tick;
+	}
+
+	public void birth(int id, int x, int y, int energy) {
+		this.record(BIRTH, id, x, y, energy);
+	}
+
+	public void death(int id, int x, int y, int energy) {
+		this.record(DEATH, id, x, y, energy);
+	}
+
+	public void restored(int id, int x, int y, int energy) {
+		this.record(RESTORED, id, x, y, energy);
+	}
+
+	private void record(int type, int id, int x, int y, int energy) {
+		ByteBuffer buffer = this.buffer;
+		if (buffer.remaining() < RECORDBYTES) {
+			try {
+				this.flush();
+			} catch (IOException e) {
+				throw new UncheckedIOException("Could not write the event log", e);
+			}
+		}
+		buffer.putLong(this.tick);
+		buffer.putInt(type);
+		buffer.putInt(id);
+		buffer.putInt(x);
+		buffer.putInt(y);
+		buffer.putInt(energy);
+		this.eventsCount++;
+	}
+
+	/*
+	 * Writes the buffered records to the file
+	 */
+	public void flush() throws IOException {
+		this.buffer.flip();
+		while (this.buffer.hasRemaining()) {
+			this.channel.write(this.buffer);
+		}
+		this.buffer.clear();
+	}
+
+	public void close() throws IOException {
+		try {
+			this.flush();
+		} finally {
+			this.channel.close();
+		}
+	}
+
+	public long getEventsCount() {
+		return this.eventsCount;
+	}
+}
@@ -0,0 +1,210 @@
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Class that replays the event log of a rabbits grass simulation (see
+ * RabbitsGrassSimulationEventLog) to rebuild population statistics offline,
+ * without running the model again: the population, births, deaths and mean
+ * lifespan of the rabbits that died on every tick, and overall totals. The log of
+ * a resumed run starts with the rabbits restored from the checkpoint, counted in
+ * the population but not as births (their lifespan is unknown).
+ *
+ * Usage: RabbitsGrassSimulationEventReplay <log> [<output.csv>]
+ *
+ * @author
+ */
+public class RabbitsGrassSimulationEventReplay {
+
+	private static final String CSVHEADER = "tick,rabbits,births,deaths,meanLifespan,meanBirthEnergy";
+	// Records read from the file at a time
+	private static final int BATCHRECORDS = 1 << 14;
+
+	// Tick each rabbit was born on, indexed by rabbit ID (-1 if unknown, e.g. born before a resumed run)
+	private long[] birthTicks = new long[1024];
+
+	// Statistics of the tick being replayed
+	private long tick = 0;
+	private int births = 0;
+	private int deaths = 0;
+	private int restored = 0;
+	// Deaths of rabbits whose birth is in the log, and the sum of their lifespans
+	private int agedDeaths = 0;
+	private long lifespanSum = 0;
+	private long birthEnergySum = 0;
+
+	// Statistics of the whole log
+	private long rabbits = 0;
+	private long maxRabbits = 0;
+	private long totalBirths = 0;
+	private long totalDeaths = 0;
+	private long totalRestored = 0;
+	private long totalAgedDeaths = 0;
+	private long totalLifespan = 0;
+	private long lastTick = 0;
+
+	private BufferedWriter out;
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			throw new IllegalArgumentException("Usage: RabbitsGrassSimulationEventReplay <log> [<output.csv>]");
+		}
+		RabbitsGrassSimulationEventReplay replay = new RabbitsGrassSimulationEventReplay();
+		replay.replay(args[0], (args.length > 1) ? args[1] : null);
+
+		System.out.println("Replayed " + (replay.totalRestored + replay.totalBirths + replay.totalDeaths) + " events up to tick "
+				+ replay.lastTick + ": " + replay.totalRestored + " restored rabbits, " + replay.totalBirths + " births, "
+				+ replay.totalDeaths + " deaths, "
+				+ replay.rabbits + " rabbits alive, at most " + replay.maxRabbits + ", mean lifespan "
+				+ String.format("%.3f", replay.getMeanLifespan()) + " ticks");
+	}
+
+	/*
+	 * Reads the whole log, writing one line per tick with events to output if not null
+	 */
+	public void replay(String fileName, String output) throws IOException {
+		Arrays.fill(this.birthTicks, -1);
+		this.out = (output != null) ? new BufferedWriter(new FileWriter(output), 1 << 16) : null;
+		FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+		try {
+			if (this.out != null) {
+				this.out.write(CSVHEADER + "\n");
+			}
+
+			ByteBuffer buffer = ByteBuffer.allocateDirect(BATCHRECORDS * RabbitsGrassSimulationEventLog.RECORDBYTES);
+			buffer.limit(RabbitsGrassSimulationEventLog.HEADERBYTES);
+			readFully(channel, buffer);
+			buffer.flip();
+			if (buffer.remaining() < RabbitsGrassSimulationEventLog.HEADERBYTES
+					|| buffer.getInt() != RabbitsGrassSimulationEventLog.MAGIC) {
+				throw new IOException(fileName + " is not a rabbits grass simulation event log");
+			}
+			int version = buffer.getInt();
+			int recordBytes = buffer.getInt();
+			if (version < 1 || version > RabbitsGrassSimulationEventLog.VERSION
+					|| recordBytes != RabbitsGrassSimulationEventLog.RECORDBYTES) {
+				throw new IOException("Unsupported event log version " + version + " in " + fileName);
+			}
+
+			boolean first = true;
+			while (true) {
+				buffer.clear();
+				readFully(channel, buffer);
+				buffer.flip();
+				if (!buffer.hasRemaining()) {
+					break;
+				}
+				while (buffer.remaining() >= RabbitsGrassSimulationEventLog.RECORDBYTES) {
+					long tick = buffer.getLong();
+					int type = buffer.getInt();
+					int id = buffer.getInt();
+					buffer.getInt();
+					buffer.getInt();
+					int energy = buffer.getInt();
+
+					if (first) {
+						this.tick = tick;
+						first = false;
+					} else if (tick != this.tick) {
+						this.endTick();
+						this.tick = tick;
+					}
+					this.apply(type, id, energy);
+				}
+				if (buffer.hasRemaining()) {
+					throw new IOException("Event log " + fileName + " ends with a partial record");
+				}
+			}
+			if (!first) {
+				this.endTick();
+			}
+		} finally {
+			channel.close();
+			if (this.out != null) {
+				this.out.close();
+			}
+		}
+	}
+
+	// Fills the buffer up to its limit, or up to the end of the file
+	private static void readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+		}
+	}
+
+	private void apply(int type, int id, int energy) throws IOException {
+		if (type == RabbitsGrassSimulationEventLog.BIRTH) {
+			if (id >= this.birthTicks.length) {
+				int length = this.birthTicks.length;
+				this.birthTicks = Arrays.copyOf(this.birthTicks, Math.max(id + 1, length * 2));
+				Arrays.fill(this.birthTicks, length, this.birthTicks.length, -1);
+			}
+			this.birthTicks[id] = this.tick;
+			this.births++;
+			this.birthEnergySum += energy;
+		} else if (type == RabbitsGrassSimulationEventLog.RESTORED) {
+			this.restored++;
+		} else if (type == RabbitsGrassSimulationEventLog.DEATH) {
+			this.deaths++;
+			if (id < this.birthTicks.length && this.birthTicks[id] >= 0) {
+				this.lifespanSum += this.tick - this.birthTicks[id];
+				this.agedDeaths++;
+			}
+		} else {
+			throw new IOException("Unknown event type " + type + " at tick " + this.tick);
+		}
+	}
+
+	// Closes the statistics of the current tick
+	private void endTick() throws IOException {
+		this.rabbits += this.restored + this.births - this.deaths;
+		this.maxRabbits = Math.max(this.maxRabbits, this.rabbits);
+		this.totalBirths += this.births;
+		this.totalDeaths += this.deaths;
+		this.totalRestored += this.restored;
+		this.totalAgedDeaths += this.agedDeaths;
+		this.totalLifespan += this.lifespanSum;
+		this.lastTick = this.tick;
+
+		if (this.out != null) {
+			this.out.write(this.tick + "," + this.rabbits + "," + this.births + "," + this.deaths + ","
+					+ String.format("%.3f", (this.agedDeaths == 0) ? 0.0 : (double)this.lifespanSum / this.agedDeaths) + ","
+					+ String.format("%.3f", (this.births == 0) ? 0.0 : (double)this.birthEnergySum / this.births) + "\n");
+		}
+
+		this.births = 0;
+		this.deaths = 0;
+		this.restored = 0;
+		this.agedDeaths = 0;
+		this.lifespanSum = 0;
+		this.birthEnergySum = 0;
+	}
+
+	/*
+	 * Mean lifespan, in ticks, of the rabbits that died (only those whose birth is in the log)
+	 */
+	public double getMeanLifespan() {
+		return (this.totalAgedDeaths == 0) ? 0 : (double)this.totalLifespan / this.totalAgedDeaths;
+	}
+
+	public long getRabbits() {
+		return this.rabbits;
+	}
+
+	public long getTotalBirths() {
+		return this.totalBirths;
+	}
+
+	public long getTotalDeaths() {
+		return this.totalDeaths;
+	}
+
+	public long getTotalRestored() {
+		return this.totalRestored;
+	}
+}
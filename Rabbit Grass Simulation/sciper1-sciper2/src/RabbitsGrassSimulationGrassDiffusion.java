@@ -0,0 +1,187 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Class that implements the spreading and decay of the grass of the rabbits
+ * grass simulation. Every tick each cell moves towards the mean energy of its four
+ * (toroidal) neighbors, then loses part of its energy:
+ *
+ * 		spread = old + sum over the neighbors n of trunc((n - old) * diffusion / 400)
+ * 		new = min(spread - ceil(spread * decay / 100), maxGrassEnergy), at least 0
+ *
+ * with diffusion and decay in percent (a diffusion of 100 replaces every cell by
+ * the mean of its neighbors). The spreading is computed as a flow along every edge,
+ * rounded toward zero: what leaves a cell is exactly what its neighbor receives, and
+ * no cell is pushed out of [0, maxGrassEnergy], so without decay the total energy
+ * never changes. The percentages are applied as fixed point factors
+ * (diffusion / 400 as a multiple of 2^-10, decay / 100 as a multiple of 2^-16), so
+ * the inner loop is made of int multiplications, shifts and min/max only and can
+ * be vectorized by the JIT.
+ *
+ * The update reads the current field and writes a second one, which then becomes
+ * the grass field of the space (double buffering). The field is processed by
+ * tiles of rows, on the given fork-join pool if any.
+ *
+ * @author
+ */
+public class RabbitsGrassSimulationGrassDiffusion {
+
+	// Rows per tile - a tile and its two border rows stay in cache on wide grids
+	private static final int TILEROWS = 32;
+	// Keeps the fixed point products within the int range
+	public static final int MAXENERGY = (1 << 15) - 1;
+
+	private int diffusionFactor;
+	private int decayFactor;
+	private int maxGrassEnergy;
+	private ForkJoinPool pool;
+
+	// Second field of the double buffer, swapped with the grass field of the space on every step
+	private int[] buffer;
+	// Grass energy and patches of every tile, summed in tile order after each step
+	private long[] tileEnergy;
+	private long[] tilePatches;
+
+	// Constructor for the diffusion object - pool can be null to process the tiles on the calling thread
+	public RabbitsGrassSimulationGrassDiffusion(int diffusion, int decay, int maxGrassEnergy, ForkJoinPool pool) {
+		if (diffusion < 0 || diffusion > 100 || decay < 0 || decay > 100) {
+			throw new IllegalArgumentException("Diffusion and decay are percentages, got " + diffusion + " and " + decay);
+		}
+		if (maxGrassEnergy > MAXENERGY) {
+			throw new IllegalArgumentException("Grass diffusion supports a max grass energy of at most " + MAXENERGY);
+		}
+		this.diffusionFactor = diffusion * 1024 / 400;
+		this.decayFactor = (decay * 65536 + 99) / 100;
+		this.maxGrassEnergy = maxGrassEnergy;
+		this.pool = pool;
+	}
+
+	/*
+	 * Spreads and decays the grass of the given space once
+	 */
+	public void step(RabbitsGrassSimulationSpace space) {
+		final int[] field = space.getDenseGrassField();
+		final int sizeX = space.getSizeX();
+		final int sizeY = space.getSizeY();
+		if (this.buffer == null || this.buffer.length != field.length) {
+			this.buffer = new int[field.length];
+		}
+		final int[] next = this.buffer;
+		// Without decay the spreading only moves energy between cells - checked in the debug mode of the space
+		long energyBefore = (space.isVerifyGrassTotals() && this.decayFactor == 0) ? space.getTotalGrassEnergy() : -1;
+
+		int tiles = (sizeY + TILEROWS - 1) / TILEROWS;
+		if (this.tileEnergy == null || this.tileEnergy.length != tiles) {
+			this.tileEnergy = new long[tiles];
+			this.tilePatches = new long[tiles];
+		}
+
+		if (this.pool == null || tiles == 1) {
+			for (int tile = 0; tile < tiles; tile++) {
+				this.processTile(field, next, sizeX, sizeY, tile);
+			}
+		} else {
+			List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(tiles);
+			for (int t = 0; t < tiles; t++) {
+				final int tile = t;
+				tasks.add(new Callable<Void>() {
+					public Void call() {
+						processTile(field, next, sizeX, sizeY, tile);
+						return null;
+					}
+				});
+			}
+			try {
+				for (Future<Void> result : this.pool.invokeAll(tasks)) {
+					result.get();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while spreading the grass", e);
+			} catch (ExecutionException e) {
+				throw new IllegalStateException("Spreading the grass failed", e.getCause());
+			}
+		}
+
+		long totalEnergy = 0;
+		long patches = 0;
+		for (int tile = 0; tile < tiles; tile++) {
+			totalEnergy += this.tileEnergy[tile];
+			patches += this.tilePatches[tile];
+		}
+		if (energyBefore >= 0 && totalEnergy != energyBefore) {
+			throw new IllegalStateException("Grass diffusion changed the total energy from " + energyBefore + " to " + totalEnergy);
+		}
+		this.buffer = space.swapGrassField(next, totalEnergy, patches);
+	}
+
+	/*
+	 * Computes the rows of one tile into next and records the energy and patches of the tile
+	 */
+	private void processTile(int[] field, int[] next, int sizeX, int sizeY, int tile) {
+		int fromRow = tile * TILEROWS;
+		int toRow = Math.min(fromRow + TILEROWS, sizeY);
+		long energy = 0;
+		long patches = 0;
+
+		for (int y = fromRow; y < toRow; y++) {
+			int row = y * sizeX;
+			int up = ((y == 0) ? sizeY - 1 : y - 1) * sizeX;
+			int down = ((y == sizeY - 1) ? 0 : y + 1) * sizeX;
+
+			// Wrapping columns first, then the interior of the row as a straight loop
+			this.updateCell(field, next, row, up, down, 0, (sizeX == 1) ? 0 : sizeX - 1, (sizeX == 1) ? 0 : 1);
+			if (sizeX > 1) {
+				this.updateCell(field, next, row, up, down, sizeX - 1, sizeX - 2, 0);
+			}
+			this.updateRow(field, next, row, up, down, sizeX);
+
+			for (int x = 0; x < sizeX; x++) {
+				int grass = next[row + x];
+				energy += grass;
+				patches += (-grass) >>> 31;
+			}
+		}
+
+		this.tileEnergy[tile] = energy;
+		this.tilePatches[tile] = patches;
+	}
+
+	// Interior cells of a row (1 .. sizeX - 2) - no wrapping, so the loop body has no branch
+	private void updateRow(int[] field, int[] next, int row, int up, int down, int sizeX) {
+		int diffusion = this.diffusionFactor;
+		int decay = this.decayFactor;
+		int max = this.maxGrassEnergy;
+		for (int x = 1; x < sizeX - 1; x++) {
+			int old = field[row + x];
+			int spread = old + flow(field[up + x] - old, diffusion) + flow(field[down + x] - old, diffusion)
+					+ flow(field[row + x - 1] - old, diffusion) + flow(field[row + x + 1] - old, diffusion);
+			int decayed = spread - ((spread * decay + 65535) >> 16);
+			next[row + x] = Math.max(0, Math.min(decayed, max));
+		}
+	}
+
+	// Single cell with explicit left and right neighbor columns (for the wrapping columns)
+	private void updateCell(int[] field, int[] next, int row, int up, int down, int x, int left, int right) {
+		int old = field[row + x];
+		int diffusion = this.diffusionFactor;
+		int spread = old + flow(field[up + x] - old, diffusion) + flow(field[down + x] - old, diffusion)
+				+ flow(field[row + left] - old, diffusion) + flow(field[row + right] - old, diffusion);
+		int decayed = spread - ((spread * this.decayFactor + 65535) >> 16);
+		next[row + x] = Math.max(0, Math.min(decayed, this.maxGrassEnergy));
+	}
+
+	/*
+	 * Energy received from a neighbor holding difference more energy (negative if given to it), rounded
+	 * toward zero so that flow(-d) == -flow(d) - a plain shift would round down and lose energy on every edge
+	 */
+	private static int flow(int difference, int diffusion) {
+		int sign = difference >> 31;
+		int magnitude = (((difference ^ sign) - sign) * diffusion) >> 10;
+		return (magnitude ^ sign) - sign;
+	}
+}
@@ -0,0 +1,93 @@
+/**
+ * Class that adapts the primitive grass field of the simulation space to the
+ * Repast Discrete2DSpace interface, so that the grass can still be drawn by a
+ * Value2DDisplay. The view holds no data of its own - every read and write goes
+ * straight to the underlying int field of the simulation space.
+ *
+ * @author
+ */
+import java.awt.Dimension;
+
+import uchicago.src.collection.BaseMatrix;
+import uchicago.src.sim.space.Discrete2DSpace;
+
+public class RabbitsGrassSimulationGrassView implements Discrete2DSpace {
+
+	private RabbitsGrassSimulationSpace rabbitsGrassSpace;
+	private BaseMatrix matrix;
+
+	// Constructor for the grass view object
+	public RabbitsGrassSimulationGrassView(RabbitsGrassSimulationSpace space) {
+		this.rabbitsGrassSpace = space;
+		this.matrix = new GrassMatrix();
+	}
+
+	/*
+	 * Matrix view over the grass field - Value2DDisplay draws through it cell by cell
+	 * (rows of the matrix are the y coordinates, columns are the x coordinates)
+	 */
+	private class GrassMatrix implements BaseMatrix {
+
+		public Object get(int col, int row) {
+			return getObjectAt(col, row);
+		}
+
+		public void put(int col, int row, Object obj) {
+			putObjectAt(col, row, obj);
+		}
+
+		public Object remove(int col, int row) {
+			Object grass = getObjectAt(col, row);
+			rabbitsGrassSpace.setGrassAt(col, row, 0);
+			return grass;
+		}
+
+		public int size() {
+			return getSizeX() * getSizeY();
+		}
+
+		public int getNumRows() {
+			return getSizeY();
+		}
+
+		public int getNumCols() {
+			return getSizeX();
+		}
+
+		public void trim() {
+		}
+	}
+
+	public int getSizeX() {
+		return this.rabbitsGrassSpace.getSizeX();
+	}
+
+	public int getSizeY() {
+		return this.rabbitsGrassSpace.getSizeY();
+	}
+
+	public Dimension getSize() {
+		return new Dimension(this.getSizeX(), this.getSizeY());
+	}
+
+	public Object getObjectAt(int x, int y) {
+		return Integer.valueOf(this.rabbitsGrassSpace.getGrassAt(x, y));
+	}
+
+	public double getValueAt(int x, int y) {
+		return this.rabbitsGrassSpace.getGrassAt(x, y);
+	}
+
+	public void putObjectAt(int x, int y, Object object) {
+		int energy = (object == null) ? 0 : ((Number)object).intValue();
+		this.rabbitsGrassSpace.setGrassAt(x, y, energy);
+	}
+
+	public void putValueAt(int x, int y, double value) {
+		this.rabbitsGrassSpace.setGrassAt(x, y, (int)value);
+	}
+
+	public BaseMatrix getMatrix() {
+		return this.matrix;
+	}
+}
@@ -0,0 +1,242 @@
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Metrics sink that streams the per tick metrics of the rabbits grass simulation
+ * to a file without ever blocking the simulation. Every record is stored in a
+ * preallocated ring buffer (one array per metric, single producer and single
+ * consumer) and a background thread drains the buffer to the file in batches.
+ * If the writer falls behind and the buffer is full, the record is dropped and
+ * counted instead of waiting (see getDroppedCount).
+ *
+ * The file is CSV, or columnar binary if its name ends in ".bin": BINARYMAGIC
+ * and BINARYVERSION (ints), then a sequence of blocks made of the number of
+ * records n (int), then the n ticks (longs) and the n values of every other
+ * metric in turn, in the order of the CSV columns (ints, longs for the grass
+ * energy and patches).
+ *
+ * @author
+ */
+public class RabbitsGrassSimulationMetricsRecorder implements RabbitsGrassSimulationMetricsSink {
+
+	private static final int DEFAULTCAPACITY = 1 << 16;
+	// How long the writer sleeps when the buffer is empty
+	private static final long IDLEPARKNANOS = 1000000L;
+	public static final String CSVHEADER = "tick,rabbits,births,deaths,grassEnergy,grassPatches";
+	// Header of the binary file
+	public static final int BINARYMAGIC = 0x52474D54;
+	public static final int BINARYVERSION = 1;
+
+	// Columns of the ring buffer - record number r is stored at index r & mask
+	private final int mask;
+	private final long[] ticks;
+	private final int[] rabbits;
+	private final int[] births;
+	private final int[] deaths;
+	private final long[] grassEnergy;
+	private final long[] grassPatches;
+
+	// Number of records written by the simulation and read by the writer so far
+	private final AtomicLong head = new AtomicLong();
+	private final AtomicLong tail = new AtomicLong();
+	private volatile long dropped = 0;
+	private volatile boolean closed = false;
+
+	private final boolean binary;
+	private DataOutputStream binaryOut;
+	private BufferedWriter csvOut;
+	private final Thread writer;
+	// First error of the writer thread, reported by close
+	private volatile IOException failure;
+
+	// Constructor for the recorder object with a buffer of the default capacity
+	public RabbitsGrassSimulationMetricsRecorder(String fileName) throws IOException {
+		this(fileName, DEFAULTCAPACITY);
+	}
+
+	// Constructor for the recorder object - capacity is rounded up to a power of two
+	public RabbitsGrassSimulationMetricsRecorder(String fileName, int capacity) throws IOException {
+		if (capacity < 1 || capacity > 1 << 30) {
+			throw new IllegalArgumentException("Invalid metrics buffer capacity: " + capacity);
+		}
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity) {
+			size <<= 1;
+		}
+		this.mask = size - 1;
+		this.ticks = new long[size];
+		this.rabbits = new int[size];
+		this.births = new int[size];
+		this.deaths = new int[size];
+		this.grassEnergy = new long[size];
+		this.grassPatches = new long[size];
+
+		this.binary = fileName.endsWith(".bin");
+		if (this.binary) {
+			this.binaryOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName), 1 << 16));
+			this.binaryOut.writeInt(BINARYMAGIC);
+			this.binaryOut.writeInt(BINARYVERSION);
+		} else {
+			this.csvOut = new BufferedWriter(new FileWriter(fileName), 1 << 16);
+			this.csvOut.write(CSVHEADER + "\n");
+		}
+
+		this.writer = new Thread(new Runnable() {
+			public void run() {
+				drainLoop();
+			}
+		}, "rabbits-grass-metrics");
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+
+	/*
+	 * Stores one record in the ring buffer, or drops it if the buffer is full - never blocks
+	 */
+	public void record(long tick, int rabbits, int births, int deaths, long grassEnergy, long grassPatches) {
+		if (this.closed) {
+			throw new IllegalStateException("The metrics recorder is closed");
+		}
+		long record = this.head.get();
+		if (record - this.tail.get() > this.mask) {
+			// Only the simulation thread updates the counter, the volatile write publishes it
+			this.dropped = this.dropped + 1;
+			return;
+		}
+		int index = (int)record & this.mask;
+		this.ticks[index] = tick;
+		this.rabbits[index] = rabbits;
+		this.births[index] = births;
+		this.deaths[index] = deaths;
+		this.grassEnergy[index] = grassEnergy;
+		this.grassPatches[index] = grassPatches;
+		// Publishes the record to the writer (ordered after the column writes)
+		this.head.lazySet(record + 1);
+	}
+
+	/*
+	 * Body of the writer thread - writes whatever the simulation recorded until the recorder is closed
+	 */
+	private void drainLoop() {
+		try {
+			while (true) {
+				// Read closed before draining, so that nothing recorded before close is missed
+				boolean last = this.closed;
+				if (!this.drain() && !last) {
+					LockSupport.parkNanos(this, IDLEPARKNANOS);
+				}
+				if (last) {
+					break;
+				}
+			}
+		} catch (IOException e) {
+			this.failure = e;
+		}
+	}
+
+	/*
+	 * Writes every pending record to the file, returns false if there was none
+	 */
+	private boolean drain() throws IOException {
+		long from = this.tail.get();
+		long to = this.head.get();
+		if (from == to) {
+			return false;
+		}
+		// A batch wrapping around the end of the buffer is written as two blocks
+		while (from < to) {
+			int start = (int)from & this.mask;
+			int count = (int)Math.min(to - from, this.mask + 1 - start);
+			this.writeBlock(start, count);
+			from += count;
+		}
+		if (this.binary) {
+			this.binaryOut.flush();
+		} else {
+			this.csvOut.flush();
+		}
+		// Frees the slots for the simulation
+		this.tail.lazySet(to);
+		return true;
+	}
+
+	private void writeBlock(int start, int count) throws IOException {
+		int end = start + count;
+		if (this.binary) {
+			DataOutputStream out = this.binaryOut;
+			out.writeInt(count);
+			for (int i = start; i < end; i++) {
+				out.writeLong(this.ticks[i]);
+			}
+			writeColumn(out, this.rabbits, start, end);
+			writeColumn(out, this.births, start, end);
+			writeColumn(out, this.deaths, start, end);
+			writeLongColumn(out, this.grassEnergy, start, end);
+			writeLongColumn(out, this.grassPatches, start, end);
+		} else {
+			StringBuilder lines = new StringBuilder(count * 32);
+			for (int i = start; i < end; i++) {
+				lines.append(this.ticks[i]).append(',').append(this.rabbits[i]).append(',')
+						.append(this.births[i]).append(',').append(this.deaths[i]).append(',')
+						.append(this.grassEnergy[i]).append(',').append(this.grassPatches[i]).append('\n');
+			}
+			this.csvOut.append(lines);
+		}
+	}
+
+	private static void writeColumn(DataOutputStream out, int[] column, int start, int end) throws IOException {
+		for (int i = start; i < end; i++) {
+			out.writeInt(column[i]);
+		}
+	}
+
+	private static void writeLongColumn(DataOutputStream out, long[] column, int start, int end) throws IOException {
+		for (int i = start; i < end; i++) {
+			out.writeLong(column[i]);
+		}
+	}
+
+	/*
+	 * Writes the remaining records, stops the writer thread and closes the file
+	 * Fails with the error of the writer thread, if it had any
+	 */
+	public void close() throws IOException {
+		if (this.closed) {
+			return;
+		}
+		this.closed = true;
+		LockSupport.unpark(this.writer);
+		try {
+			this.writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while closing the metrics recorder", e);
+		} finally {
+			if (this.binary) {
+				this.binaryOut.close();
+			} else {
+				this.csvOut.close();
+			}
+		}
+		if (this.failure != null) {
+			throw this.failure;
+		}
+	}
+
+	/*
+	 * Returns the number of records dropped because the buffer was full
+	 */
+	public long getDroppedCount() {
+		return this.dropped;
+	}
+
+	public int getCapacity() {
+		return this.mask + 1;
+	}
+}
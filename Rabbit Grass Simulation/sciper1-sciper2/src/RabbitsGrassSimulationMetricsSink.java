@@ -0,0 +1,16 @@
+import java.io.Closeable;
+
+/**
+ * Interface of the receivers of the per tick metrics of the rabbits grass
+ * simulation. The model calls record once at the end of every step, on the
+ * simulation thread - implementations must return quickly and never block on I/O.
+ *
+ * @author
+ */
+public interface RabbitsGrassSimulationMetricsSink extends Closeable {
+
+	/*
+	 * Records the state of the simulation at the end of the given tick
+	 */
+	void record(long tick, int rabbits, int births, int deaths, long grassEnergy, long grassPatches);
+}
@@ -6,13 +6,15 @@ import uchicago.src.sim.gui.DisplaySurface;
 import uchicago.src.sim.gui.ColorMap;
 import uchicago.src.sim.gui.Value2DDisplay;
 import uchicago.src.sim.gui.Object2DDisplay;
-import uchicago.src.sim.util.SimUtilities;
 import uchicago.src.sim.analysis.DataSource;
 import uchicago.src.sim.analysis.OpenSequenceGraph;
 import uchicago.src.sim.analysis.Sequence;
 
 import java.awt.Color;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Class that implements the simulation model for the rabbits grass
@@ -35,6 +37,13 @@ public class RabbitsGrassSimulationModel extends SimModelImpl {
 		private static final int DEFAULTMAXINITRABBITENERGY = 10;
 		private static final int DEFAULTMAXGRASSENERGY = 15;
 		private static final int DEFAULTMAXINITIALGRASSENERGY = 5;
+		private static final int DEFAULTTHREADS = 1;
+		private static final int DEFAULTGRASSDIFFUSION = 0;
+		private static final int DEFAULTGRASSDECAY = 0;
+		private static final int DEFAULTSTORAGE = RabbitsGrassSimulationSpace.HEAP;
+		private static final int DEFAULTFRAMERATE = 0;
+		private static final int DEFAULTCHECKPOINTINTERVAL = 0;
+		private static final String DEFAULTCHECKPOINTFILE = "rabbits_grass.checkpoint";
 		
 		// Initialize variables to their default values
 		private int gridSize = DEFAULTGRIDSIZE;
@@ -45,14 +54,54 @@ public class RabbitsGrassSimulationModel extends SimModelImpl {
 		private int maxInitialRabbitEnergy = DEFAULTMAXINITRABBITENERGY;
 		private int maxGrassEnergy = DEFAULTMAXGRASSENERGY;
 		private int maxInitialGrassEnergy = DEFAULTMAXINITIALGRASSENERGY;
+		// Number of threads moving the rabbits - more than one splits the grid into stripes processed in parallel
+		private int threads = DEFAULTTHREADS;
+		// Percentages of grass spreading to the neighbors and decaying on every tick (see RabbitsGrassSimulationGrassDiffusion)
+		private int grassDiffusion = DEFAULTGRASSDIFFUSION;
+		private int grassDecay = DEFAULTGRASSDECAY;
+		// Where the space keeps its fields: 0 on the heap, 1 in direct buffers, 2 in a memory-mapped file
+		//		(see RabbitsGrassSimulationSpace)
+		private int storage = DEFAULTSTORAGE;
+		// Frames drawn per second while the simulation runs at full speed on its own (see
+		//		RabbitsGrassSimulationDisplaySnapshot) - if 0, the display is updated after every tick
+		private int frameRate = DEFAULTFRAMERATE;
+		// A checkpoint is written to checkpointFile every checkpointInterval ticks (never if 0)
+		private int checkpointInterval = DEFAULTCHECKPOINTINTERVAL;
+		private String checkpointFile = DEFAULTCHECKPOINTFILE;
 		
 		private String simulationName = "Rabbits Grass Simulation";
 		
+		// Seed of the model's own random number generator - runs with the same seed and parameters are identical
+		private long seed = System.nanoTime();
+		private RabbitsGrassRandom random;
+		// When set, the model is built and stepped without any display or charts (see RabbitsGrassSimulationBatch)
+		private boolean headless = false;
+		// Receives the metrics of every step, null if nothing records them
+		private RabbitsGrassSimulationMetricsSink metricsSink;
+		// Receives every birth and death, null if they are not logged
+		private RabbitsGrassSimulationEventLog eventLog;
+		
+		// Number of simulation steps performed since the model was built
+		private long tick;
+		// Number of rabbits born and died during the last simulation step
+		private int lastBirths;
+		private int lastDeaths;
+		
 		private Schedule schedule;
 		
 		private RabbitsGrassSimulationSpace rabbitsGrassSpace;
 		private DisplaySurface displaySurface;
-		private ArrayList<RabbitsGrassSimulationAgent> rabbits;
+		// Frames published for the display when it is decoupled from the ticks, null otherwise
+		private RabbitsGrassSimulationDisplaySnapshot displaySnapshot;
+		private RabbitsGrassSimulationPopulation rabbits;
+		// Moves the rabbits on several threads, null when the rabbits are moved sequentially
+		private RabbitsGrassSimulationParallelStep parallelStep;
+		// Threads of the parallel step and of the grass diffusion, null when the model runs on a single thread
+		private ForkJoinPool pool;
+		// Spreads and decays the grass, null if neither is enabled
+		private RabbitsGrassSimulationGrassDiffusion grassSpreading;
+		// Agent views of the rabbits drawn by the display, refreshed before every display update
+		private ArrayList<RabbitsGrassSimulationAgent> rabbitViews;
 		
 		private OpenSequenceGraph totalGrassAndRabbitEnergies;
 		private OpenSequenceGraph grassPatchesAndRabbitsCounts;
@@ -126,17 +175,21 @@ public class RabbitsGrassSimulationModel extends SimModelImpl {
 		public void begin() {
 			this.buildModel();
 			this.buildSchedule();
-			this.buildDisplay();
 			
-			this.displaySurface.display();
-			this.totalGrassAndRabbitEnergies.display();
-			this.grassPatchesAndRabbitsCounts.display();
+			if (!this.headless) {
+				this.buildDisplay();
+				
+				this.displaySurface.display();
+				this.totalGrassAndRabbitEnergies.display();
+				this.grassPatchesAndRabbitsCounts.display();
+			}
 		}
 
 		public void setup() {
 			// setup simulation space
 			this.rabbitsGrassSpace = null;
-			this.rabbits = new ArrayList<RabbitsGrassSimulationAgent>();
+			this.rabbits = null;
+			this.rabbitViews = new ArrayList<RabbitsGrassSimulationAgent>();
 			this.schedule = new Schedule(1);
 			
 			// Nullify current display if not null
@@ -145,6 +198,11 @@ public class RabbitsGrassSimulationModel extends SimModelImpl {
 		    }
 		    displaySurface = null;
 		    
+			if (this.displaySnapshot != null) {
+				this.displaySnapshot.stop();
+			}
+			this.displaySnapshot = null;
+		    
 			// Nullify current OpenSequenceGraph
 			if (this.totalGrassAndRabbitEnergies != null) {
 				this.totalGrassAndRabbitEnergies.dispose();
@@ -156,6 +214,11 @@ public class RabbitsGrassSimulationModel extends SimModelImpl {
 			}
 			this.grassPatchesAndRabbitsCounts = null;
 			
+			// Headless runs never create a display nor sequence graphs
+			if (this.headless) {
+				return;
+			}
+			
 		    // Reinitialize display and sequence graph
 		    displaySurface = new DisplaySurface(this, "Rabbits Grass Simulation Window");
 		    this.totalGrassAndRabbitEnergies = new OpenSequenceGraph("Total Grass And Rabbit Energies", this);
@@ -170,7 +233,11 @@ public class RabbitsGrassSimulationModel extends SimModelImpl {
 		 * Builds simulation model - generates initial grass patches, initializes initial rabbits
 		 */
 		public void buildModel() {
-			this.rabbitsGrassSpace = new RabbitsGrassSimulationSpace(this.gridSize);
+			this.buildEmptyModel();
+			// The initial rabbits are logged as born on tick 0
+			if (this.eventLog != null) {
+				this.eventLog.setTick(0);
+			}
 
 			// Generate initial grass patches
 			this.rabbitsGrassSpace.generateGrass(this.numInitGrass, this.maxGrassEnergy);
@@ -180,18 +247,154 @@ public class RabbitsGrassSimulationModel extends SimModelImpl {
 				addNewRabbit();
 			}
 			
-			// Agents report
-			for (int i = 0; i < this.rabbits.size(); i++) {
-				RabbitsGrassSimulationAgent rabbit = (RabbitsGrassSimulationAgent)this.rabbits.get(i);
+			// Agents report (skipped for headless runs, which can start with a large population)
+			for (int i = 0; i < this.rabbits.size() && !this.headless; i++) {
+				RabbitsGrassSimulationAgent rabbit = this.rabbits.toAgent(i, null);
 				rabbit.report();
 			}
 		}
 		
-		// Creates a new rabbit agents with initial energy and adds it to the list of agents and simulation space
-		private void addNewRabbit() {
-		    RabbitsGrassSimulationAgent rabbit = new RabbitsGrassSimulationAgent(this.maxInitialRabbitEnergy);
-		    this.rabbits.add(rabbit);
-		    rabbitsGrassSpace.addAgent(rabbit);
+		// Creates the generator, an empty space and population, the parallel step and the grass diffusion,
+		//		and resets the counters
+		private void buildEmptyModel() {
+			this.random = new RabbitsGrassRandom(this.seed);
+			this.rabbitsGrassSpace = new RabbitsGrassSimulationSpace(this.gridSize, this.random, this.storage);
+			this.rabbits = new RabbitsGrassSimulationPopulation(this.rabbitsGrassSpace, this.random);
+			this.rabbits.setEventLog(this.eventLog);
+			this.shutdown();
+			this.pool = (this.threads > 1) ? new ForkJoinPool(this.threads) : null;
+			this.parallelStep = null;
+			if (this.pool != null) {
+				RabbitsGrassSimulationParallelStep parallel = new RabbitsGrassSimulationParallelStep(this.rabbits, this.rabbitsGrassSpace, this.random, this.pool);
+				// Grids too small to be split into stripes are stepped sequentially
+				if (parallel.isApplicable()) {
+					this.parallelStep = parallel;
+				}
+			}
+			this.grassSpreading = null;
+			if (this.grassDiffusion > 0 || this.grassDecay > 0) {
+				// The diffusion works on the dense grass field of the heap
+				if (this.rabbitsGrassSpace.isOffHeap()) {
+					throw new IllegalStateException("Grass diffusion and decay are not supported with off-heap storage");
+				}
+				this.grassSpreading = new RabbitsGrassSimulationGrassDiffusion(this.grassDiffusion, this.grassDecay, this.maxGrassEnergy, this.pool);
+			}
+			this.tick = 0;
+			this.lastBirths = 0;
+			this.lastDeaths = 0;
+		}
+		
+		/*
+		 * Stops the worker threads of a model stepped by several threads - call it once done with the model,
+		 * which has to be built again before being stepped
+		 */
+		public void shutdown() {
+			if (this.pool != null) {
+				this.pool.shutdown();
+				this.pool = null;
+			}
+		}
+		
+		/*
+		 * Writes the full state of the simulation to the given file: the parameters, the step counters,
+		 * the state of the generator, the grass field and the rabbits. A model resumed from it
+		 * with loadCheckpoint continues exactly as this one does.
+		 */
+		public void saveCheckpoint(String fileName) throws IOException {
+			RabbitsGrassSimulationCheckpoint checkpoint = RabbitsGrassSimulationCheckpoint.create(fileName);
+			try {
+				checkpoint.putInt(this.gridSize);
+				checkpoint.putInt(this.numInitRabbits);
+				checkpoint.putInt(this.numInitGrass);
+				checkpoint.putInt(this.grassGrowthRate);
+				checkpoint.putInt(this.birthThreshold);
+				checkpoint.putInt(this.maxInitialRabbitEnergy);
+				checkpoint.putInt(this.maxGrassEnergy);
+				checkpoint.putInt(this.maxInitialGrassEnergy);
+				// The stripes of the parallel step depend on the number of threads, so it is part of the state
+				checkpoint.putInt(this.threads);
+				checkpoint.putInt(this.grassDiffusion);
+				checkpoint.putInt(this.grassDecay);
+				// The storage decides how the space draws free cells, so it is part of the state as well
+				checkpoint.putInt(this.storage);
+				checkpoint.putLong(this.seed);
+				
+				checkpoint.putLong(this.tick);
+				checkpoint.putInt(this.lastBirths);
+				checkpoint.putInt(this.lastDeaths);
+				long[] state = new long[RabbitsGrassRandom.STATESIZE];
+				this.random.getState(state, 0);
+				checkpoint.putLongs(state, state.length);
+				
+				this.rabbitsGrassSpace.save(checkpoint);
+				this.rabbits.save(checkpoint);
+				checkpoint.commit();
+			} finally {
+				checkpoint.close();
+			}
+		}
+		
+		/*
+		 * Replaces the parameters and the state of the model with the ones saved in the given checkpoint
+		 * Used instead of buildModel to resume a run
+		 */
+		public void loadCheckpoint(String fileName) throws IOException {
+			RabbitsGrassSimulationCheckpoint checkpoint = RabbitsGrassSimulationCheckpoint.open(fileName);
+			try {
+				this.gridSize = checkpoint.getInt();
+				this.numInitRabbits = checkpoint.getInt();
+				this.numInitGrass = checkpoint.getInt();
+				this.grassGrowthRate = checkpoint.getInt();
+				this.birthThreshold = checkpoint.getInt();
+				this.maxInitialRabbitEnergy = checkpoint.getInt();
+				this.maxGrassEnergy = checkpoint.getInt();
+				this.maxInitialGrassEnergy = checkpoint.getInt();
+				this.threads = checkpoint.getInt();
+				this.grassDiffusion = checkpoint.getInt();
+				this.grassDecay = checkpoint.getInt();
+				this.storage = checkpoint.getInt();
+				this.seed = checkpoint.getLong();
+				this.buildEmptyModel();
+				
+				this.tick = checkpoint.getLong();
+				this.lastBirths = checkpoint.getInt();
+				this.lastDeaths = checkpoint.getInt();
+				long[] state = new long[RabbitsGrassRandom.STATESIZE];
+				checkpoint.getLongs(state, state.length);
+				this.random.setState(state, 0);
+				
+				this.rabbitsGrassSpace.load(checkpoint);
+				// The restored rabbits are logged on the tick of the checkpoint
+				if (this.eventLog != null) {
+					this.eventLog.setTick(this.tick);
+				}
+				this.rabbits.load(checkpoint);
+			} finally {
+				checkpoint.close();
+			}
+		}
+		
+		// Creates a new rabbit with initial energy and adds it to the population and simulation space
+		// Returns false if there was no empty cell left for the rabbit
+		private boolean addNewRabbit() {
+		    return this.rabbits.addNewRabbit(this.maxInitialRabbitEnergy) >= 0;
+		}
+		
+		/*
+		 * Refreshes the agent views drawn by the display from the current population
+		 */
+		private void updateRabbitViews() {
+			int count = this.rabbits.size();
+			for (int i = 0; i < count; i++) {
+				if (i < this.rabbitViews.size()) {
+					this.rabbits.toAgent(i, this.rabbitViews.get(i));
+				} else {
+					this.rabbitViews.add(this.rabbits.toAgent(i, null));
+				}
+			}
+			while (this.rabbitViews.size() > count) {
+				this.rabbitViews.remove(this.rabbitViews.size() - 1);
+			}
 		}
 		
 		/*
@@ -205,11 +408,28 @@ public class RabbitsGrassSimulationModel extends SimModelImpl {
 				map.mapColor(i, 0, ((double)i)/ this.maxGrassEnergy, 0);
 			}
 			
-			Value2DDisplay displayGrass = new Value2DDisplay(rabbitsGrassSpace.getCurrentGrassSpace(), map);
+			// Decoupled from the ticks, the grass and the agents are drawn from the published frames
+			Value2DDisplay displayGrass;
+			if (this.frameRate > 0) {
+				this.displaySnapshot = new RabbitsGrassSimulationDisplaySnapshot(rabbitsGrassSpace.getSizeX(), rabbitsGrassSpace.getSizeY(), this.frameRate);
+				displayGrass = new Value2DDisplay(this.displaySnapshot, map);
+			} else {
+				displayGrass = new Value2DDisplay(rabbitsGrassSpace.getCurrentGrassSpace(), map);
+			}
 			displaySurface.addDisplayable(displayGrass, "Rabbits Grass");
 
-			Object2DDisplay displayAgents = new Object2DDisplay(rabbitsGrassSpace.getCurrentRabbitsSpace());
-			displayAgents.setObjectList(rabbits);
+			// The views of the agents are then only refreshed by the snapshot, on the event dispatch thread
+			Object2DDisplay displayAgents;
+			if (this.displaySnapshot != null) {
+				displayAgents = new Object2DDisplay(this.displaySnapshot.getRabbitsSpace());
+				displayAgents.setObjectList(rabbitViews);
+				this.displaySnapshot.publish(rabbitsGrassSpace, rabbits, tick);
+				this.displaySnapshot.start(displaySurface, rabbitViews);
+			} else {
+				displayAgents = new Object2DDisplay(new RabbitsGrassSimulationRabbitsView(rabbitsGrassSpace, rabbits));
+				updateRabbitViews();
+				displayAgents.setObjectList(rabbitViews);
+			}
 
 			displaySurface.addDisplayableProbeable(displayGrass, "Grass");
 			displaySurface.addDisplayableProbeable(displayAgents, "Agents");
@@ -227,34 +447,13 @@ public class RabbitsGrassSimulationModel extends SimModelImpl {
 		public void buildSchedule() {
 			class RabbitsGrassStep extends BasicAction {
 				public void execute() {
-					// Ensure that agents move in random order
-					SimUtilities.shuffle(rabbits);
-					int rabbitsCount = rabbits.size();
-					int newBornRabbits = 0;
-					
-					for (int i = 0; i < rabbitsCount ; i++) {
-						// Perform single step for every rabbit agent
-						RabbitsGrassSimulationAgent rabbit = (RabbitsGrassSimulationAgent)rabbits.get(i);
-						rabbit.step();
-						
-						// If the energy is sufficient, a rabbit is born at a random location
-						if (rabbit.getEnergy() > birthThreshold){
-							addNewRabbit();
-							newBornRabbits++;
-							// Make sure rabbit's energy after reproduction is below the birth threshold
-							// 		by reduce current rabbit's energy in half (or in edge cases set it to
-							//		(birthThreshold - 1), if needed - e.g. if grass patch contained too much energy)
-							rabbit.setEnergy(Math.min(birthThreshold - 1, (int)Math.floor(rabbit.getEnergy() / 2)));
-						}
+					step();
+					if (displaySnapshot != null) {
+						displaySnapshot.publish(rabbitsGrassSpace, rabbits, tick);
+					} else {
+						updateRabbitViews();
+						displaySurface.updateDisplay();
 					}
-					
-					// Generate grass at given growth rate
-					rabbitsGrassSpace.generateGrass(grassGrowthRate, maxGrassEnergy);
-					
-					// Eliminate agents with low energy (e.g. energy < 1)
-					int deadRabbits = removeDeadRabbits();
-					
-					displaySurface.updateDisplay();
 				}
 			}
 			
@@ -275,16 +474,74 @@ public class RabbitsGrassSimulationModel extends SimModelImpl {
 			schedule.scheduleActionAtInterval(10, new RabbitsGrassUpdateGrassAndRabbitsCounts());
 		}
 		
+		/*
+		 * Performs a single simulation step (one tick) - moves every rabbit, handles births,
+		 * grows grass and removes the dead rabbits. Does not touch the display.
+		 */
+		public void step() {
+			int newBornRabbits = 0;
+			if (eventLog != null) {
+				eventLog.setTick(tick + 1);
+			}
+			
+			if (parallelStep != null && rabbitsGrassSpace.isDense()) {
+				// Move the rabbits stripe by stripe on several threads (sparse grass or rabbits are not thread safe)
+				newBornRabbits = parallelStep.moveRabbits(birthThreshold, maxInitialRabbitEnergy);
+			} else {
+				// Ensure that agents move in random order (newborns are appended after rabbitsCount and only move next tick)
+				int[] order = rabbits.shuffleOrder();
+				int rabbitsCount = rabbits.size();
+				
+				for (int i = 0; i < rabbitsCount ; i++) {
+					// Perform single step for every rabbit
+					int rabbit = order[i];
+					rabbits.stepRabbit(rabbit);
+					
+					// If the energy is sufficient, a rabbit is born at a random location
+					if (rabbits.reproduce(rabbit, birthThreshold) && addNewRabbit()) {
+						newBornRabbits++;
+					}
+				}
+			}
+			
+			// Generate grass at given growth rate
+			rabbitsGrassSpace.generateGrass(grassGrowthRate, maxGrassEnergy);
+			
+			// Spread and decay the grass, if enabled
+			if (grassSpreading != null) {
+				grassSpreading.step(rabbitsGrassSpace);
+			}
+			
+			// Eliminate agents with low energy (e.g. energy < 1)
+			int deadRabbits = removeDeadRabbits();
+			
+			this.lastBirths = newBornRabbits;
+			this.lastDeaths = deadRabbits;
+			this.tick++;
+			
+			if (this.metricsSink != null) {
+				this.metricsSink.record(this.tick, this.rabbits.size(), newBornRabbits, deadRabbits,
+						this.rabbitsGrassSpace.getTotalGrassEnergy(), this.rabbitsGrassSpace.getGrassPatchesCount());
+			}
+			
+			if (this.checkpointInterval > 0 && this.tick % this.checkpointInterval == 0) {
+				try {
+					this.saveCheckpoint(this.checkpointFile);
+				} catch (IOException e) {
+					throw new UncheckedIOException("Could not write checkpoint " + this.checkpointFile, e);
+				}
+			}
+		}
+		
 		/*
 		 * Remove rabbit agents with low energy (e.g. energy < 1)
 		 */
 		private int removeDeadRabbits() {
 			int count = 0;
+			// Going backwards, the rabbit swapped into a freed slot has already been checked
 			for (int i = rabbits.size() - 1; i >= 0; i--) {
-				RabbitsGrassSimulationAgent rabbit = (RabbitsGrassSimulationAgent)rabbits.get(i);
-				if (rabbit.getEnergy() < 1) {
-					rabbitsGrassSpace.removeAgentAt(rabbit.getX(), rabbit.getY());
-					rabbits.remove(i);
+				if (rabbits.getEnergy(i) < 1) {
+					rabbits.removeRabbit(i);
 					count++;
 				}
 			}
@@ -296,7 +553,7 @@ public class RabbitsGrassSimulationModel extends SimModelImpl {
 		public String[] getInitParam() {
 			// Parameters to be set by users via the Repast UI slider bar
 			// Do "not" modify the parameters names provided in the skeleton code, you can add more if you want 
-			String[] params = { "GridSize", "NumInitRabbits", "NumInitGrass", "GrassGrowthRate", "BirthThreshold", "MaxInitialRabbitEnergy", "MaxGrassEnergy", "MaxInitialGrassEnergy"};
+			String[] params = { "GridSize", "NumInitRabbits", "NumInitGrass", "GrassGrowthRate", "BirthThreshold", "MaxInitialRabbitEnergy", "MaxGrassEnergy", "MaxInitialGrassEnergy", "Threads", "GrassDiffusion", "GrassDecay", "Storage", "FrameRate", "CheckpointInterval", "CheckpointFile"};
 			return params;
 		}
 		
@@ -375,12 +632,126 @@ public class RabbitsGrassSimulationModel extends SimModelImpl {
 			this.maxInitialGrassEnergy = maxEnergy;
 		}
 		
-		private int getRabbitEnergy() {
-			int totalEnergy = 0;
-			for (int i = 0; i < rabbits.size(); i ++) {
-				totalEnergy += rabbits.get(i).getEnergy();
+		public int getThreads() {
+			return this.threads;
+		}
+		
+		public void setThreads(int threads) {
+			this.threads = threads;
+		}
+		
+		public int getGrassDiffusion() {
+			return this.grassDiffusion;
+		}
+		
+		public void setGrassDiffusion(int diffusion) {
+			this.grassDiffusion = diffusion;
+		}
+		
+		public int getGrassDecay() {
+			return this.grassDecay;
+		}
+		
+		public void setGrassDecay(int decay) {
+			this.grassDecay = decay;
+		}
+		
+		public int getStorage() {
+			return this.storage;
+		}
+		
+		public void setStorage(int storage) {
+			this.storage = storage;
+		}
+		
+		public int getFrameRate() {
+			return this.frameRate;
+		}
+		
+		public void setFrameRate(int frameRate) {
+			this.frameRate = frameRate;
+		}
+		
+		public int getCheckpointInterval() {
+			return this.checkpointInterval;
+		}
+		
+		public void setCheckpointInterval(int interval) {
+			this.checkpointInterval = interval;
+		}
+		
+		public String getCheckpointFile() {
+			return this.checkpointFile;
+		}
+		
+		public void setCheckpointFile(String fileName) {
+			this.checkpointFile = fileName;
+		}
+		
+		public long getTick() {
+			return this.tick;
+		}
+		
+		public long getSeed() {
+			return this.seed;
+		}
+		
+		public void setSeed(long seed) {
+			this.seed = seed;
+		}
+		
+		public RabbitsGrassRandom getRandom() {
+			return this.random;
+		}
+		
+		public boolean isHeadless() {
+			return this.headless;
+		}
+		
+		public void setHeadless(boolean headless) {
+			this.headless = headless;
+		}
+		
+		public RabbitsGrassSimulationMetricsSink getMetricsSink() {
+			return this.metricsSink;
+		}
+		
+		public void setMetricsSink(RabbitsGrassSimulationMetricsSink sink) {
+			this.metricsSink = sink;
+		}
+		
+		public RabbitsGrassSimulationEventLog getEventLog() {
+			return this.eventLog;
+		}
+		
+		public void setEventLog(RabbitsGrassSimulationEventLog eventLog) {
+			this.eventLog = eventLog;
+			if (this.rabbits != null) {
+				this.rabbits.setEventLog(eventLog);
 			}
-			
-			return totalEnergy;
+		}
+		
+		public RabbitsGrassSimulationSpace getSpace() {
+			return this.rabbitsGrassSpace;
+		}
+		
+		public int getRabbitsCount() {
+			return this.rabbits.size();
+		}
+		
+		public int getLastBirths() {
+			return this.lastBirths;
+		}
+		
+		public int getLastDeaths() {
+			return this.lastDeaths;
+		}
+		
+		public RabbitsGrassSimulationPopulation getRabbits() {
+			return this.rabbits;
+		}
+		
+		public long getRabbitEnergy() {
+			return this.rabbits.getTotalEnergy();
 		}
 }
@@ -0,0 +1,110 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Class that implements an int array of any length (long indexes) stored outside
+ * of the Java heap, for the grids of very large simulation spaces. The array is
+ * split into tiles of TILEINTS ints, each one a direct buffer or a memory-mapped
+ * window of a temporary file. Either way the garbage collector never scans nor
+ * copies the grid, so GC pauses do not grow with the world.
+ *
+ * Direct buffers count against -XX:MaxDirectMemorySize (by default the max heap
+ * size); mapped tiles are only limited by the address space and paged in and out
+ * by the operating system, so they also suit grids larger than the memory.
+ * The temporary file is deleted as soon as it is mapped.
+ *
+ * @author
+ */
+public class RabbitsGrassSimulationOffHeapGrid {
+
+	private static final int TILESHIFT = 24;
+	private static final int TILEINTS = 1 << TILESHIFT;
+	private static final int TILEMASK = TILEINTS - 1;
+	// Ints copied at a time when saving or loading the grid
+	private static final int COPYCHUNK = 1 << 16;
+
+	private final long length;
+	private final IntBuffer[] tiles;
+
+	// Constructor for a grid of the given length, all zeros - in a temporary mapped file if mapped is set
+	public RabbitsGrassSimulationOffHeapGrid(long length, boolean mapped) {
+		this.length = length;
+		this.tiles = new IntBuffer[(int)((length + TILEINTS - 1) >>> TILESHIFT)];
+		try {
+			FileChannel channel = null;
+			Path file = null;
+			if (mapped) {
+				file = Files.createTempFile("rabbits-grass-", ".grid");
+				channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			}
+			try {
+				for (int tile = 0; tile < this.tiles.length; tile++) {
+					long ints = Math.min(TILEINTS, length - ((long)tile << TILESHIFT));
+					ByteBuffer bytes;
+					if (mapped) {
+						// Mapping past the end grows the (sparse) file, which reads as zeros
+						bytes = channel.map(FileChannel.MapMode.READ_WRITE, ((long)tile << TILESHIFT) * 4, ints * 4);
+					} else {
+						bytes = ByteBuffer.allocateDirect((int)ints * 4);
+					}
+					this.tiles[tile] = bytes.order(ByteOrder.nativeOrder()).asIntBuffer();
+				}
+			} finally {
+				// The mappings stay valid once the channel is closed and the file deleted
+				if (mapped) {
+					channel.close();
+					Files.delete(file);
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not map an off-heap grid of " + length + " cells", e);
+		}
+	}
+
+	public int get(long index) {
+		return this.tiles[(int)(index >>> TILESHIFT)].get((int)index & TILEMASK);
+	}
+
+	public void set(long index, int value) {
+		this.tiles[(int)(index >>> TILESHIFT)].put((int)index & TILEMASK, value);
+	}
+
+	public long length() {
+		return this.length;
+	}
+
+	/*
+	 * Writes the ints [0 .. count) of the grid to a checkpoint
+	 */
+	void save(RabbitsGrassSimulationCheckpoint checkpoint, long count) throws IOException {
+		int[] chunk = new int[COPYCHUNK];
+		for (long start = 0; start < count; start += COPYCHUNK) {
+			int ints = (int)Math.min(COPYCHUNK, count - start);
+			for (int i = 0; i < ints; i++) {
+				chunk[i] = this.get(start + i);
+			}
+			checkpoint.putInts(chunk, ints);
+		}
+	}
+
+	/*
+	 * Reads count ints from a checkpoint into [0 .. count) of the grid
+	 */
+	void load(RabbitsGrassSimulationCheckpoint checkpoint, long count) throws IOException {
+		int[] chunk = new int[COPYCHUNK];
+		for (long start = 0; start < count; start += COPYCHUNK) {
+			int ints = (int)Math.min(COPYCHUNK, count - start);
+			checkpoint.getInts(chunk, ints);
+			for (int i = 0; i < ints; i++) {
+				this.set(start + i, chunk[i]);
+			}
+		}
+	}
+}
@@ -0,0 +1,235 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Class that moves the rabbits of the rabbits grass simulation on several
+ * threads. The toroidal grid is split into an even number of horizontal stripes
+ * (each at least two rows high) and every rabbit belongs to the stripe it starts
+ * the tick in. A rabbit only touches its own row and the rows right above and
+ * below, so the even stripes never touch the same cells and can all be processed
+ * at the same time; the odd stripes are processed in a second phase, after all
+ * moves across the borders of the even stripes have been settled.
+ *
+ * Within a stripe the rabbits move in a random order drawn from a generator
+ * split off the model's generator, so a run is still reproducible from its seed
+ * (for a given number of stripes). Newborns need a random free cell anywhere on
+ * the grid, so they are only placed once both phases are over. Grass eaten on the
+ * worker threads is summed per stripe and reported to the space afterwards; the
+ * moves are recorded per stripe and replayed on the free-cell set of the space
+ * once the phase is over.
+ *
+ * @author
+ */
+public class RabbitsGrassSimulationParallelStep {
+
+	// Stripes per thread - more stripes than threads keep the threads busy when rabbits are unevenly spread
+	private static final int STRIPESPERTHREAD = 4;
+	private static final int MINSTRIPEHEIGHT = 2;
+
+	private RabbitsGrassSimulationPopulation rabbits;
+	private RabbitsGrassSimulationSpace rabbitsGrassSpace;
+	private RabbitsGrassRandom random;
+	private ForkJoinPool pool;
+
+	private int stripes;
+	private int stripeHeight;
+
+	// Slots of the rabbits of stripe s are stripeSlots[stripeStart[s] .. stripeStart[s + 1])
+	private int[] stripeStart;
+	private int[] stripeSlots;
+
+	// Per stripe results of the current phase
+	private int[] stripeBirths;
+	private int[] stripeGrassEnergy;
+	private int[] stripeGrassPatches;
+	// Moves made in every stripe, as (cell, newCell) pairs in the order they were made
+	private int[][] stripeMoves;
+	private int[] stripeMovesCount;
+
+	// Constructor for the parallel step object - moves the rabbits on the threads of the given pool
+	public RabbitsGrassSimulationParallelStep(RabbitsGrassSimulationPopulation rabbits, RabbitsGrassSimulationSpace space,
+			RabbitsGrassRandom random, ForkJoinPool pool) {
+		this.rabbits = rabbits;
+		this.rabbitsGrassSpace = space;
+		this.random = random;
+		this.pool = pool;
+		int threads = pool.getParallelism();
+
+		// An even number of stripes, as many as possible up to STRIPESPERTHREAD per thread
+		int maxStripes = space.getSizeY() / MINSTRIPEHEIGHT;
+		this.stripes = Math.min(threads * STRIPESPERTHREAD, maxStripes) & ~1;
+		this.stripeHeight = (this.stripes > 0) ? space.getSizeY() / this.stripes : 0;
+
+		this.stripeStart = new int[this.stripes + 1];
+		this.stripeSlots = new int[0];
+		this.stripeBirths = new int[this.stripes];
+		this.stripeGrassEnergy = new int[this.stripes];
+		this.stripeGrassPatches = new int[this.stripes];
+		this.stripeMoves = new int[this.stripes][0];
+		this.stripeMovesCount = new int[this.stripes];
+	}
+
+	/*
+	 * Returns false if the grid is too small to be split into stripes - the step then has to be done sequentially
+	 */
+	public boolean isApplicable() {
+		return this.stripes >= 2;
+	}
+
+	/*
+	 * Moves every rabbit once, lets them reproduce and places the newborns
+	 * Returns the number of rabbits born
+	 */
+	public int moveRabbits(int birthThreshold, int maxInitialRabbitEnergy) {
+		this.assignStripes();
+
+		int births = this.runPhase(0, birthThreshold) + this.runPhase(1, birthThreshold);
+
+		// Newborns are placed anywhere on the grid, which is only safe once all threads are done
+		int newBornRabbits = 0;
+		for (int i = 0; i < births; i++) {
+			if (this.rabbits.addNewRabbit(maxInitialRabbitEnergy) >= 0) {
+				newBornRabbits++;
+			}
+		}
+		return newBornRabbits;
+	}
+
+	/*
+	 * Sorts the slots of the rabbits by the stripe they start the tick in (counting sort)
+	 */
+	private void assignStripes() {
+		int count = this.rabbits.size();
+		if (this.stripeSlots.length < count) {
+			this.stripeSlots = new int[Math.max(count, this.stripeSlots.length * 2)];
+		}
+
+		int[] start = this.stripeStart;
+		for (int s = 0; s <= this.stripes; s++) {
+			start[s] = 0;
+		}
+		for (int slot = 0; slot < count; slot++) {
+			start[this.stripeOf(this.rabbits.getY(slot)) + 1]++;
+		}
+		for (int s = 0; s < this.stripes; s++) {
+			start[s + 1] += start[s];
+		}
+
+		// Fill the stripes, using stripeBirths as the running insert position of every stripe
+		int[] next = this.stripeBirths;
+		System.arraycopy(start, 0, next, 0, this.stripes);
+		for (int slot = 0; slot < count; slot++) {
+			this.stripeSlots[next[this.stripeOf(this.rabbits.getY(slot))]++] = slot;
+		}
+	}
+
+	// The last stripe also takes the rows left over by the integer division
+	private int stripeOf(int y) {
+		return Math.min(y / this.stripeHeight, this.stripes - 1);
+	}
+
+	/*
+	 * Processes every stripe of the given parity at the same time and returns the number of births owed
+	 */
+	private int runPhase(int parity, final int birthThreshold) {
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(this.stripes / 2);
+		for (int s = parity; s < this.stripes; s += 2) {
+			final int stripe = s;
+			final RabbitsGrassRandom stripeRandom = this.random.split();
+			tasks.add(new Callable<Void>() {
+				public Void call() {
+					moveStripe(stripe, stripeRandom, birthThreshold);
+					return null;
+				}
+			});
+		}
+
+		try {
+			for (Future<Void> result : this.pool.invokeAll(tasks)) {
+				result.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while moving the rabbits", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Moving the rabbits failed", e.getCause());
+		}
+
+		// Reduce the per stripe results in stripe order
+		int births = 0;
+		int grassEnergy = 0;
+		int grassPatches = 0;
+		for (int s = parity; s < this.stripes; s += 2) {
+			births += this.stripeBirths[s];
+			grassEnergy += this.stripeGrassEnergy[s];
+			grassPatches += this.stripeGrassPatches[s];
+			// Stripes of a phase never share cells, so only the order within a stripe matters
+			int[] moves = this.stripeMoves[s];
+			for (int i = 0; i < this.stripeMovesCount[s]; i += 2) {
+				this.rabbitsGrassSpace.rabbitMoved(moves[i], moves[i + 1]);
+			}
+		}
+		this.rabbitsGrassSpace.grassEaten(grassEnergy, grassPatches);
+		return births;
+	}
+
+	/*
+	 * Moves the rabbits of one stripe in a random order - runs on a worker thread
+	 */
+	private void moveStripe(int stripe, RabbitsGrassRandom random, int birthThreshold) {
+		int from = this.stripeStart[stripe];
+		int to = this.stripeStart[stripe + 1];
+		int[] slots = this.stripeSlots;
+
+		// Shuffle the rabbits of the stripe in place (Fisher-Yates)
+		for (int i = to - 1; i > from; i--) {
+			int j = from + random.nextInt(i - from + 1);
+			int slot = slots[i];
+			slots[i] = slots[j];
+			slots[j] = slot;
+		}
+
+		// Every rabbit makes at most one move
+		int[] moves = this.stripeMoves[stripe];
+		if (moves.length < 2 * (to - from)) {
+			moves = new int[Math.max(2 * (to - from), moves.length * 2)];
+			this.stripeMoves[stripe] = moves;
+		}
+		int movesCount = 0;
+		int sizeX = this.rabbitsGrassSpace.getSizeX();
+
+		int births = 0;
+		int grassEnergy = 0;
+		int grassPatches = 0;
+		for (int i = from; i < to; i++) {
+			int rabbit = slots[i];
+			int cell = this.rabbits.getY(rabbit) * sizeX + this.rabbits.getX(rabbit);
+			int grass = this.rabbits.stepRabbit(rabbit, random, true);
+			int newCell = this.rabbits.getY(rabbit) * sizeX + this.rabbits.getX(rabbit);
+			if (newCell != cell) {
+				moves[movesCount++] = cell;
+				moves[movesCount++] = newCell;
+			}
+			if (grass > 0) {
+				grassEnergy += grass;
+				grassPatches++;
+			}
+			if (this.rabbits.reproduce(rabbit, birthThreshold)) {
+				births++;
+			}
+		}
+
+		this.stripeBirths[stripe] = births;
+		this.stripeGrassEnergy[stripe] = grassEnergy;
+		this.stripeGrassPatches[stripe] = grassPatches;
+		this.stripeMovesCount[stripe] = movesCount;
+	}
+
+	public int getStripes() {
+		return this.stripes;
+	}
+}
@@ -0,0 +1,303 @@
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Class that stores the rabbits of the rabbits grass simulation as a struct of
+ * arrays - the ID, position and energy of the rabbit in slot i are ids[i], xs[i],
+ * ys[i] and energies[i]. Slots 0 .. size-1 are alive; a dead rabbit is removed by
+ * moving the last rabbit into its slot, so removal is O(1) and slots are only
+ * stable until the next removal.
+ *
+ * The population also implements the behavior of the rabbits (see stepRabbit);
+ * RabbitsGrassSimulationAgent objects are only created as views for the display
+ * or for reporting.
+ *
+ * @author
+ */
+public class RabbitsGrassSimulationPopulation {
+
+	private static final int DEFAULTCAPACITY = 16;
+
+	private int size;
+	// ID of the last rabbit added to the population
+	private int lastID;
+	private int[] ids;
+	private int[] xs;
+	private int[] ys;
+	private int[] energies;
+
+	// Random permutation of the slots, giving the order in which rabbits move during a step
+	private int[] order;
+
+	private RabbitsGrassSimulationSpace rabbitsGrassSpace;
+	private RabbitsGrassRandom random;
+	// Receives the births and deaths of rabbits, null if they are not logged
+	private RabbitsGrassSimulationEventLog eventLog;
+
+	// Constructor for the population object
+	public RabbitsGrassSimulationPopulation(RabbitsGrassSimulationSpace space, RabbitsGrassRandom random) {
+		this.rabbitsGrassSpace = space;
+		this.random = random;
+		this.size = 0;
+		this.lastID = 0;
+		this.ids = new int[DEFAULTCAPACITY];
+		this.xs = new int[DEFAULTCAPACITY];
+		this.ys = new int[DEFAULTCAPACITY];
+		this.energies = new int[DEFAULTCAPACITY];
+		this.order = new int[DEFAULTCAPACITY];
+	}
+
+	/*
+	 * Creates a new rabbit with a random initial energy in [1 ; maxInitialEnergy] and a fresh ID
+	 * Returns the slot of the new rabbit, or -1 if there was no room for it (the ID is then not used up)
+	 */
+	public int addNewRabbit(int maxInitialEnergy) {
+		int id = this.lastID + 1;
+		int energy = this.random.nextInt(maxInitialEnergy) + 1;
+		int slot = this.addRabbit(id, energy);
+		if (slot < 0) {
+			return slot;
+		}
+		this.lastID = id;
+		if (this.eventLog != null) {
+			this.eventLog.birth(id, this.xs[slot], this.ys[slot], energy);
+		}
+		return slot;
+	}
+	
+	/*
+	 * Adds a rabbit with the given ID and energy at a random free cell of the space
+	 * Returns the slot of the new rabbit, or -1 if there was no room for it
+	 */
+	public int addRabbit(int id, int energy) {
+		if (this.size == this.ids.length) {
+			this.grow();
+		}
+
+		int slot = this.size;
+		long cell = this.rabbitsGrassSpace.addRabbit(slot);
+		if (cell < 0) {
+			return -1;
+		}
+
+		this.ids[slot] = id;
+		this.xs[slot] = (int)(cell % this.rabbitsGrassSpace.getSizeX());
+		this.ys[slot] = (int)(cell / this.rabbitsGrassSpace.getSizeX());
+		this.energies[slot] = energy;
+		this.size++;
+		return slot;
+	}
+
+	/*
+	 * Removes the rabbit in the given slot from the population and the space
+	 * The last rabbit of the population takes over the freed slot
+	 */
+	public void removeRabbit(int slot) {
+		if (this.eventLog != null) {
+			this.eventLog.death(this.ids[slot], this.xs[slot], this.ys[slot], this.energies[slot]);
+		}
+		this.rabbitsGrassSpace.removeAgentAt(this.xs[slot], this.ys[slot]);
+
+		int last = this.size - 1;
+		if (slot != last) {
+			this.ids[slot] = this.ids[last];
+			this.xs[slot] = this.xs[last];
+			this.ys[slot] = this.ys[last];
+			this.energies[slot] = this.energies[last];
+			this.rabbitsGrassSpace.setRabbitAt(this.xs[slot], this.ys[slot], slot);
+		}
+		this.size--;
+	}
+
+	/*
+	 * Shuffles the order in which the current rabbits move (Fisher-Yates over the slot indexes)
+	 * Returns the order array, its first size() entries are a permutation of the slots
+	 */
+	public int[] shuffleOrder() {
+		int[] order = this.order;
+		for (int i = 0; i < this.size; i++) {
+			order[i] = i;
+		}
+		for (int i = this.size - 1; i > 0; i--) {
+			int j = this.random.nextInt(i + 1);
+			int slot = order[i];
+			order[i] = order[j];
+			order[j] = slot;
+		}
+		return order;
+	}
+
+	/*
+	 * Step function implements the behavior of the rabbit in the given slot on every tick of the simulation
+	 * 		Try to move to a random neighboring cell (up/down/left/right)
+	 * 		If there is any grass on the new cell eat it and increase energy
+	 * 		Decrement energy due to the step made
+	 */
+	public void stepRabbit(int slot) {
+		this.stepRabbit(slot, this.random, false);
+	}
+	
+	/*
+	 * Steps the rabbit in the given slot drawing its direction from random and returns the grass energy it ate
+	 * If concurrent is true, the caller is responsible to report the eaten grass and the move to the space
+	 */
+	public int stepRabbit(int slot, RabbitsGrassRandom random, boolean concurrent) {
+		int x = this.xs[slot];
+		int y = this.ys[slot];
+		int newX = x;
+		int newY = y;
+
+		int direction = random.nextInt(4);
+		if (direction == 0) {
+			// move left
+			newX--;
+		} else if (direction == 1) {
+			// move up
+			newY--;
+		} else if (direction == 2) {
+			// move right
+			newX++;
+		} else {
+			// move down
+			newY++;
+		}
+
+		int sizeX = this.rabbitsGrassSpace.getSizeX();
+		int sizeY = this.rabbitsGrassSpace.getSizeY();
+		newX = (newX + sizeX) % sizeX;
+		newY = (newY + sizeY) % sizeY;
+
+		// Try to move the rabbit to the new location
+		boolean moved = concurrent ? this.rabbitsGrassSpace.shiftRabbitTo(x, y, newX, newY)
+				: this.rabbitsGrassSpace.moveRabbitTo(x, y, newX, newY);
+		if (moved) {
+			// If the move was successful, eat any grass that might be there
+			this.xs[slot] = newX;
+			this.ys[slot] = newY;
+			x = newX;
+			y = newY;
+		}
+		// (if the move was not successful, eat any grass that might have been generated
+		//		at the current location of the rabbit)
+		int grass = concurrent ? this.rabbitsGrassSpace.takeGrassAt(x, y) : this.rabbitsGrassSpace.eatGrassAt(x, y);
+		this.energies[slot] += grass - 1;
+		return grass;
+	}
+	
+	/*
+	 * If the energy of the rabbit in the given slot is above birthThreshold, the rabbit reproduces:
+	 * its energy is brought back below the threshold and true is returned (the newborn is added by the caller)
+	 */
+	public boolean reproduce(int slot, int birthThreshold) {
+		int energy = this.energies[slot];
+		if (energy <= birthThreshold) {
+			return false;
+		}
+		// Make sure rabbit's energy after reproduction is below the birth threshold
+		// 		by reduce current rabbit's energy in half (or in edge cases set it to
+		//		(birthThreshold - 1), if needed - e.g. if grass patch contained too much energy)
+		this.energies[slot] = Math.min(birthThreshold - 1, energy / 2);
+		return true;
+	}
+
+	/*
+	 * Returns a view of the rabbit in the given slot - view is reused if not null, otherwise a new one is created
+	 */
+	public RabbitsGrassSimulationAgent toAgent(int slot, RabbitsGrassSimulationAgent view) {
+		if (view == null) {
+			view = new RabbitsGrassSimulationAgent();
+		}
+		view.set(this.ids[slot], this.xs[slot], this.ys[slot], this.energies[slot]);
+		return view;
+	}
+
+	/*
+	 * Writes the rabbits, slot by slot, to a checkpoint
+	 */
+	void save(RabbitsGrassSimulationCheckpoint checkpoint) throws IOException {
+		checkpoint.putInt(this.size);
+		checkpoint.putInt(this.lastID);
+		checkpoint.putInts(this.ids, this.size);
+		checkpoint.putInts(this.xs, this.size);
+		checkpoint.putInts(this.ys, this.size);
+		checkpoint.putInts(this.energies, this.size);
+	}
+	
+	/*
+	 * Restores the rabbits written by save (in the same slots) and puts them back on the space
+	 * The restored rabbits are logged to the event log, if any
+	 */
+	void load(RabbitsGrassSimulationCheckpoint checkpoint) throws IOException {
+		int size = checkpoint.getInt();
+		if (size < 0 || size > (long)this.rabbitsGrassSpace.getSizeX() * this.rabbitsGrassSpace.getSizeY()) {
+			throw new IOException("Invalid rabbits count in checkpoint: " + size);
+		}
+		this.lastID = checkpoint.getInt();
+		while (this.ids.length < size) {
+			this.grow();
+		}
+		checkpoint.getInts(this.ids, size);
+		checkpoint.getInts(this.xs, size);
+		checkpoint.getInts(this.ys, size);
+		checkpoint.getInts(this.energies, size);
+		this.size = size;
+		for (int slot = 0; slot < size; slot++) {
+			this.rabbitsGrassSpace.setRabbitAt(this.xs[slot], this.ys[slot], slot);
+			if (this.eventLog != null) {
+				this.eventLog.restored(this.ids[slot], this.xs[slot], this.ys[slot], this.energies[slot]);
+			}
+		}
+	}
+
+	// Doubles the capacity of every array
+	private void grow() {
+		int capacity = this.ids.length * 2;
+		this.ids = Arrays.copyOf(this.ids, capacity);
+		this.xs = Arrays.copyOf(this.xs, capacity);
+		this.ys = Arrays.copyOf(this.ys, capacity);
+		this.energies = Arrays.copyOf(this.energies, capacity);
+		this.order = new int[capacity];
+	}
+
+	/*
+	 * Getters and Setters section
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	public int getID(int slot) {
+		return this.ids[slot];
+	}
+
+	public int getX(int slot) {
+		return this.xs[slot];
+	}
+
+	public int getY(int slot) {
+		return this.ys[slot];
+	}
+
+	public int getEnergy(int slot) {
+		return this.energies[slot];
+	}
+
+	public void setEnergy(int slot, int energy) {
+		this.energies[slot] = energy;
+	}
+
+	public void setEventLog(RabbitsGrassSimulationEventLog eventLog) {
+		this.eventLog = eventLog;
+	}
+
+	/*
+	 * Returns the total energy of all rabbits
+	 */
+	public long getTotalEnergy() {
+		long totalEnergy = 0;
+		for (int i = 0; i < this.size; i++) {
+			totalEnergy += this.energies[i];
+		}
+		return totalEnergy;
+	}
+}
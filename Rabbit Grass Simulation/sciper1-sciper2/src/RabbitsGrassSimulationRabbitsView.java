@@ -0,0 +1,93 @@
+/**
+ * Class that adapts the rabbits field of the simulation space to the Repast
+ * Discrete2DSpace interface, so that the rabbits can still be probed through
+ * an Object2DDisplay. Every non-empty cell is reported as a freshly created
+ * RabbitsGrassSimulationAgent view of the rabbit living there. The view is
+ * read-only - rabbits are only moved by the simulation itself.
+ *
+ * @author
+ */
+import java.awt.Dimension;
+
+import uchicago.src.collection.BaseMatrix;
+import uchicago.src.sim.space.Discrete2DSpace;
+
+public class RabbitsGrassSimulationRabbitsView implements Discrete2DSpace {
+
+	private RabbitsGrassSimulationSpace rabbitsGrassSpace;
+	private RabbitsGrassSimulationPopulation rabbits;
+	private BaseMatrix matrix;
+
+	// Constructor for the rabbits view object
+	public RabbitsGrassSimulationRabbitsView(RabbitsGrassSimulationSpace space, RabbitsGrassSimulationPopulation rabbits) {
+		this.rabbitsGrassSpace = space;
+		this.rabbits = rabbits;
+		this.matrix = new RabbitsMatrix();
+	}
+
+	/*
+	 * Matrix view over the rabbits field (rows of the matrix are the y coordinates, columns are the x coordinates)
+	 */
+	private class RabbitsMatrix implements BaseMatrix {
+
+		public Object get(int col, int row) {
+			return getObjectAt(col, row);
+		}
+
+		public void put(int col, int row, Object obj) {
+			putObjectAt(col, row, obj);
+		}
+
+		public Object remove(int col, int row) {
+			throw new UnsupportedOperationException("The rabbits view is read-only");
+		}
+
+		public int size() {
+			return getSizeX() * getSizeY();
+		}
+
+		public int getNumRows() {
+			return getSizeY();
+		}
+
+		public int getNumCols() {
+			return getSizeX();
+		}
+
+		public void trim() {
+		}
+	}
+
+	public int getSizeX() {
+		return this.rabbitsGrassSpace.getSizeX();
+	}
+
+	public int getSizeY() {
+		return this.rabbitsGrassSpace.getSizeY();
+	}
+
+	public Dimension getSize() {
+		return new Dimension(this.getSizeX(), this.getSizeY());
+	}
+
+	public Object getObjectAt(int x, int y) {
+		int slot = this.rabbitsGrassSpace.getRabbitAt(x, y);
+		return (slot < 0) ? null : this.rabbits.toAgent(slot, null);
+	}
+
+	public double getValueAt(int x, int y) {
+		return (this.rabbitsGrassSpace.getRabbitAt(x, y) < 0) ? 0 : 1;
+	}
+
+	public void putObjectAt(int x, int y, Object object) {
+		throw new UnsupportedOperationException("The rabbits view is read-only");
+	}
+
+	public void putValueAt(int x, int y, double value) {
+		throw new UnsupportedOperationException("The rabbits view is read-only");
+	}
+
+	public BaseMatrix getMatrix() {
+		return this.matrix;
+	}
+}
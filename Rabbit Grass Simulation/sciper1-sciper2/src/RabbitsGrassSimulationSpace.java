@@ -1,106 +1,525 @@
 /**
  * Class that implements the simulation space of the rabbits grass simulation.
+ *
+ * The grass is stored densely (one int per cell) or, while few cells hold grass
+ * on a large grid, sparsely in a cell map - the space switches between the two
+ * automatically as the number of grass patches changes. The rabbits are stored
+ * densely together with an index of the free cells, unless the grid is too large
+ * for that, in which case they are kept in a cell map as well. Grids beyond 2^31
+ * cells are always sparse, so a huge world with little grass stays small.
+ *
+ * Alternatively the space can keep the dense grass and rabbits fields and the
+ * free-cell index off the Java heap (see RabbitsGrassSimulationOffHeapGrid), in
+ * direct buffers or in a memory-mapped file - for large, densely populated worlds
+ * that would otherwise burden the garbage collector or not fit the heap at all.
  * @author 
  */
-import uchicago.src.sim.space.Object2DGrid;
-import uchicago.src.sim.util.Random;
+import java.io.IOException;
+import java.util.Arrays;
+
+import uchicago.src.sim.space.Discrete2DSpace;
 
 public class RabbitsGrassSimulationSpace {
 	
-	// 2D Grid spaces to keep track of the grass and the rabbits
-	private Object2DGrid grassSpace;
-	private Object2DGrid rabbitsSpace;
+	// Bulk regrowth is used from this many new patches per step, on fields too large to stay in cache (2 MB and up)
+	private static final int BULKREGROWTHMINPATCHES = 1024;
+	private static final int BULKREGROWTHMINCELLS = 1 << 19;
+	// Number of patches drawn per block, and number of field regions a block is bucketed into
+	private static final int REGROWTHBLOCK = 4096;
+	private static final int REGROWTHREGIONS = 256;
+	// Grids of at least this many cells store the grass sparsely while it covers less than 1/SPARSEGRASSMAXFILL
+	//		of the cells, and densely (up to DENSEGRASSMAXCELLS cells) once it covers more than 1/DENSEGRASSMINFILL
+	private static final long SPARSEGRASSMINCELLS = 1 << 20;
+	private static final long DENSEGRASSMAXCELLS = 1 << 28;
+	private static final int SPARSEGRASSMAXFILL = 32;
+	private static final int DENSEGRASSMINFILL = 8;
+	// Grids above this many cells keep the rabbits in a cell map instead of a dense field and free-cell index
+	private static final long DENSERABBITSMAXCELLS = 1 << 24;
+	// Where the fields are stored: on the heap (dense or sparse as above), or off the heap, always dense
+	public static final int HEAP = 0;
+	public static final int DIRECT = 1;
+	public static final int MAPPED = 2;
+	
+	// Dimensions of the (toroidal) simulation space
+	private int sizeX;
+	private int sizeY;
+	
+	// Number of cells, as a long - sizeX * sizeY can be beyond the int range on sparse grids
+	private long cellsCount;
+	
+	// Grass energy of every cell, stored row-major (index = y * sizeX + x) - null while the grass is sparse
+	private int[] grassField;
+	// Grass energy of the cells holding grass - null while the grass is dense
+	private RabbitsGrassSimulationCellMap sparseGrass;
+	// Running totals of the grass field, kept up to date by every write to it
+	private long totalGrassEnergy;
+	private long grassPatchesCount;
+	// When set, every read of the running totals is checked against a full scan of the field
+	private boolean verifyGrassTotals;
+	// Set once the grass is spread over the dense field (see getDenseGrassField) - it then stays dense
+	private boolean denseGrassRequired;
+	// Population slot + 1 of the rabbit on every cell (0 for an empty cell), stored row-major as well
+	private int[] rabbitsField;
+	// Population slot + 1 of the rabbit on every occupied cell - used instead of the rabbits field
+	//		and the free-cell index on grids too large for them
+	private RabbitsGrassSimulationCellMap sparseRabbits;
+	// Indexed set of the empty cells: freeCells[0 .. freeCellsCount) lists them in no particular order
+	//		and freeCellPosition[cell] is the position of cell in that list (-1 for an occupied cell)
+	private int[] freeCells;
+	private int[] freeCellPosition;
+	private int freeCellsCount;
+	// Off-heap versions of grassField, rabbitsField, freeCells and freeCellPosition - null when stored on the heap
+	private RabbitsGrassSimulationOffHeapGrid offHeapGrass;
+	private RabbitsGrassSimulationOffHeapGrid offHeapRabbits;
+	private RabbitsGrassSimulationOffHeapGrid offHeapFreeCells;
+	private RabbitsGrassSimulationOffHeapGrid offHeapFreeCellPosition;
+	
+	// Buffers of the bulk regrowth, only allocated once it is first used
+	private int[] regrowthCells;
+	private int[] regrowthEnergies;
+	private int[] regrowthSortedCells;
+	private int[] regrowthSortedEnergies;
+	private int[] regrowthRegionStart;
+	
+	// Display view of the grass field, only created once a GUI asks for it
+	private RabbitsGrassSimulationGrassView grassView;
+	
+	// Random number generator of the simulation the space belongs to
+	private RabbitsGrassRandom random;
 	
 	// Constructor for the simulation space object
-	public RabbitsGrassSimulationSpace (int size) {
-		// Initialize the grass and rabbits grid objects
-		this.grassSpace = new Object2DGrid(size, size);
-		this.rabbitsSpace = new Object2DGrid(size, size);
+	public RabbitsGrassSimulationSpace (int size, RabbitsGrassRandom random) {
+		this(size, random, HEAP);
+	}
+	
+	// Constructor for the simulation space object, storing the fields as given by storage (HEAP, DIRECT or MAPPED)
+	public RabbitsGrassSimulationSpace (int size, RabbitsGrassRandom random, int storage) {
+		this.sizeX = size;
+		this.sizeY = size;
+		this.random = random;
 		
-		// Initialize the grass grid cells
-		for (int x = 0; x < size; x++) {
-			for (int y = 0; y < size; y++) {
-				grassSpace.putObjectAt(x, y, Integer.valueOf(0));
+		this.cellsCount = (long)size * size;
+		
+		if (storage == DIRECT || storage == MAPPED) {
+			// The free-cell index holds cell indexes as ints
+			if (this.cellsCount > Integer.MAX_VALUE) {
+				throw new IllegalArgumentException("Off-heap fields support grids of up to " + Integer.MAX_VALUE + " cells, got "
+						+ this.cellsCount);
+			}
+			// Off the heap, the grass and the rabbits are always dense (all cells start without grass and free)
+			boolean mapped = (storage == MAPPED);
+			this.offHeapGrass = new RabbitsGrassSimulationOffHeapGrid(this.cellsCount, mapped);
+			this.offHeapRabbits = new RabbitsGrassSimulationOffHeapGrid(this.cellsCount, mapped);
+			this.offHeapFreeCells = new RabbitsGrassSimulationOffHeapGrid(this.cellsCount, mapped);
+			this.offHeapFreeCellPosition = new RabbitsGrassSimulationOffHeapGrid(this.cellsCount, mapped);
+			for (int cell = 0; cell < this.cellsCount; cell++) {
+				this.offHeapFreeCells.set(cell, cell);
+				this.offHeapFreeCellPosition.set(cell, cell);
+			}
+			this.freeCellsCount = (int)this.cellsCount;
+		} else if (storage == HEAP) {
+			// Initialize the grass field (all cells start without grass) - sparse on large grids
+			if (this.cellsCount >= SPARSEGRASSMINCELLS) {
+				this.sparseGrass = new RabbitsGrassSimulationCellMap();
+			} else {
+				this.grassField = new int[size * size];
 			}
+			
+			// Initialize the (empty) rabbits field, every cell starts free
+			if (this.cellsCount > DENSERABBITSMAXCELLS) {
+				this.sparseRabbits = new RabbitsGrassSimulationCellMap();
+			} else {
+				this.rabbitsField = new int[size * size];
+				this.freeCells = new int[size * size];
+				this.freeCellPosition = new int[size * size];
+				for (int cell = 0; cell < this.freeCells.length; cell++) {
+					this.freeCells[cell] = cell;
+					this.freeCellPosition[cell] = cell;
+				}
+				this.freeCellsCount = size * size;
+			}
+		} else {
+			throw new IllegalArgumentException("Unknown storage of the simulation space: " + storage);
 		}
+		
+		this.totalGrassEnergy = 0;
+		this.grassPatchesCount = 0;
+		this.verifyGrassTotals = Boolean.getBoolean("rabbits.verifyGrassTotals");
 	}
 	
 	/*
 	 * Generate grassCount number of new grass patches, each of at most maxGrassEnergy energy
 	 */
 	public void generateGrass(int grassCount, int maxGrassEnergy) {
-		if (grassCount > 0 && maxGrassEnergy > 0) {
+		if (grassCount >= BULKREGROWTHMINPATCHES && this.grassField != null && this.grassField.length >= BULKREGROWTHMINCELLS
+				&& maxGrassEnergy > 0) {
+			this.generateGrassBulk(grassCount, maxGrassEnergy);
+		} else if (grassCount > 0 && maxGrassEnergy > 0) {
 			for (int i = 0; i < grassCount; i++) {
 				// Choose random coordinates to place the grass
-				Random.createUniform();
-				int grassX = (int)(Math.random()*(grassSpace.getSizeX()));
-				int grassY = (int)(Math.random()*(grassSpace.getSizeY()));
+				int grassX = this.random.nextInt(this.sizeX);
+				int grassY = this.random.nextInt(this.sizeY);
 				// Choose random amount of energy in the range [1 ; MaxGrassEnergy]
-				int newGrassEnergy = (int)(Math.random()*maxGrassEnergy) + 1;
+				int newGrassEnergy = this.random.nextInt(maxGrassEnergy) + 1;
 		      
 				// If there is already grass present at (grassX, grassY), accumulate the energy of old and new grass
-				if (this.isGrassSpaceCellOccupied(grassX, grassY)) {
-					int currentGrass = (int) grassSpace.getValueAt(grassX, grassY);
+				long cell = this.cellKey(grassX, grassY);
+				int currentGrass = this.grassAt(cell);
+				if (currentGrass > 0) {
 					newGrassEnergy = Math.min(newGrassEnergy + currentGrass, maxGrassEnergy);
 				}
-				grassSpace.putObjectAt(grassX, grassY, Integer.valueOf(newGrassEnergy));
+				this.writeGrass(cell, currentGrass, newGrassEnergy);
 			}
 		}	
+		this.updateGrassRepresentation();
+	}
+	
+	/*
+	 * Switches the grass between the dense and the sparse representation if the number of patches calls for it
+	 * The thresholds are apart, so a grass cover hovering around one of them does not switch back and forth
+	 */
+	private void updateGrassRepresentation() {
+		if (this.cellsCount < SPARSEGRASSMINCELLS || this.denseGrassRequired || this.offHeapGrass != null) {
+			return;
+		}
+		if (this.grassField == null) {
+			if (this.grassPatchesCount > this.cellsCount / DENSEGRASSMINFILL && this.cellsCount <= DENSEGRASSMAXCELLS) {
+				this.useDenseGrass();
+			}
+		} else if (this.grassPatchesCount < this.cellsCount / SPARSEGRASSMAXFILL) {
+			this.useSparseGrass();
+		}
+	}
+	
+	// Moves the grass from the cell map into a dense field
+	private void useDenseGrass() {
+		int[] field = new int[(int)this.cellsCount];
+		RabbitsGrassSimulationCellMap map = this.sparseGrass;
+		for (int slot = 0; slot < map.capacity(); slot++) {
+			long cell = map.keyAt(slot);
+			if (cell >= 0) {
+				field[(int)cell] = map.valueAt(slot);
+			}
+		}
+		this.grassField = field;
+		this.sparseGrass = null;
 	}
 	
-	// Checks if an agent is present at given coordinates
-	private boolean isAgentSpaceCellOccupied (int x, int y) {
-		return rabbitsSpace.getObjectAt(x, y) != null;
+	// Moves the grass from the dense field into a cell map
+	private void useSparseGrass() {
+		RabbitsGrassSimulationCellMap map = new RabbitsGrassSimulationCellMap();
+		for (int cell = 0; cell < this.grassField.length; cell++) {
+			if (this.grassField[cell] != 0) {
+				map.put(cell, this.grassField[cell]);
+			}
+		}
+		this.sparseGrass = map;
+		this.grassField = null;
 	}
 	
-	// Checks if a grass patch is present at given coordinates
-	private boolean isGrassSpaceCellOccupied (int x, int y) {
-		return grassSpace.getObjectAt(x, y) != null;
+	/*
+	 * Returns the dense grass field (switching to it if needed) and keeps the grass dense from then on
+	 * Used by the grass diffusion, which updates every cell of the field on every tick
+	 */
+	int[] getDenseGrassField() {
+		if (this.offHeapGrass != null) {
+			throw new IllegalStateException("The grass field is stored off the heap");
+		}
+		if (this.grassField == null) {
+			if (this.cellsCount > DENSEGRASSMAXCELLS) {
+				throw new IllegalStateException("The grid is too large for a dense grass field: " + this.cellsCount + " cells");
+			}
+			this.useDenseGrass();
+		}
+		this.denseGrassRequired = true;
+		return this.grassField;
 	}
 	
 	/*
-	 * Generates a new agents and positions it at a random cell on the grid
+	 * Replaces the dense grass field with newField, holding the given totals, and returns the previous field
 	 */
-	public boolean addAgent(RabbitsGrassSimulationAgent agent) {
-		boolean added = false;
-		Random.createUniform();
-		// Since we create a Uniform distribution, trialLimit is set to the number of possible cells
-		int trialLimit = this.rabbitsSpace.getSizeX() * this.rabbitsSpace.getSizeY();
-		int trialCount = 0;
-
-		// Generate random coordinates until agent is successfully placed (e.g. empty cell is chosen)
-		//		or trial limit is reached
-		while (!added && trialCount < trialLimit) {
-			int x = (int)(Math.random()*(rabbitsSpace.getSizeX()));
-		    int y = (int)(Math.random()*(rabbitsSpace.getSizeY()));
-		    if(isAgentSpaceCellOccupied(x,y) == false){
-		    	rabbitsSpace.putObjectAt(x,y,agent);
-		        agent.setCoordinates(x,y);
-		        agent.setRabbitsGrassSpace(this);
-		        added = true;
-		    }
-		    trialCount++;
+	int[] swapGrassField(int[] newField, long totalEnergy, long patches) {
+		int[] previous = this.grassField;
+		this.grassField = newField;
+		this.totalGrassEnergy = totalEnergy;
+		this.grassPatchesCount = patches;
+		return previous;
+	}
+	
+	/*
+	 * Copies the grass energy of every cell, row-major, into target (of at least sizeX * sizeY ints)
+	 * Used to take snapshots of the grass for the display
+	 */
+	void copyGrass(int[] target) {
+		if (this.grassField != null) {
+			System.arraycopy(this.grassField, 0, target, 0, this.grassField.length);
+		} else if (this.offHeapGrass != null) {
+			for (int cell = 0; cell < this.cellsCount; cell++) {
+				target[cell] = this.offHeapGrass.get(cell);
+			}
+		} else {
+			Arrays.fill(target, 0, (int)this.cellsCount, 0);
+			for (int slot = 0; slot < this.sparseGrass.capacity(); slot++) {
+				long cell = this.sparseGrass.keyAt(slot);
+				if (cell >= 0) {
+					target[(int)cell] = this.sparseGrass.valueAt(slot);
+				}
+			}
 		}
+	}
+	
+	/*
+	 * Returns true if both the grass and the rabbits are stored densely - only then can several threads
+	 * move rabbits at the same time (see RabbitsGrassSimulationParallelStep)
+	 */
+	public boolean isDense() {
+		return this.grassField != null && this.rabbitsField != null;
+	}
+	
+	/*
+	 * Bulk version of generateGrass for high growth rates on large fields
+	 * Patches are drawn exactly as in the per-patch loop (same random numbers in the same order), a block
+	 * at a time. Every block is then bucketed by region of the field (counting sort on the high bits of the
+	 * cell index) and written region by region, so that the writes stay in cache instead of hitting random
+	 * cells of the whole field. Accumulating patches on a cell is order independent - the cell ends up with
+	 * min(current + sum of new patches, maxGrassEnergy) either way - so the field (and the running totals)
+	 * end up exactly as with the per-patch loop.
+	 */
+	private void generateGrassBulk(int grassCount, int maxGrassEnergy) {
+		if (this.regrowthCells == null) {
+			this.regrowthCells = new int[REGROWTHBLOCK];
+			this.regrowthEnergies = new int[REGROWTHBLOCK];
+			this.regrowthSortedCells = new int[REGROWTHBLOCK];
+			this.regrowthSortedEnergies = new int[REGROWTHBLOCK];
+			this.regrowthRegionStart = new int[REGROWTHREGIONS + 1];
+		}
+		int[] cells = this.regrowthCells;
+		int[] energies = this.regrowthEnergies;
+		int[] sortedCells = this.regrowthSortedCells;
+		int[] sortedEnergies = this.regrowthSortedEnergies;
+		int[] regionStart = this.regrowthRegionStart;
+		
+		// Cells of a region share the bits of the cell index above regionShift
+		int regionShift = Math.max(0, 32 - Integer.numberOfLeadingZeros(this.grassField.length - 1) - 8);
+		
+		for (int done = 0; done < grassCount; done += REGROWTHBLOCK) {
+			int block = Math.min(REGROWTHBLOCK, grassCount - done);
+			
+			// Draw the block of patches and count the patches of every region
+			for (int r = 0; r <= REGROWTHREGIONS; r++) {
+				regionStart[r] = 0;
+			}
+			for (int i = 0; i < block; i++) {
+				int grassX = this.random.nextInt(this.sizeX);
+				int grassY = this.random.nextInt(this.sizeY);
+				int cell = this.cellIndex(grassX, grassY);
+				cells[i] = cell;
+				energies[i] = this.random.nextInt(maxGrassEnergy) + 1;
+				regionStart[(cell >>> regionShift) + 1]++;
+			}
+			for (int r = 0; r < REGROWTHREGIONS; r++) {
+				regionStart[r + 1] += regionStart[r];
+			}
+			
+			// Bucket the patches by region (regionStart[r] ends up at the start of region r + 1)
+			for (int i = 0; i < block; i++) {
+				int position = regionStart[cells[i] >>> regionShift]++;
+				sortedCells[position] = cells[i];
+				sortedEnergies[position] = energies[i];
+			}
+			
+			// Write the patches region by region
+			for (int i = 0; i < block; i++) {
+				int cell = sortedCells[i];
+				int currentGrass = this.grassField[cell];
+				int newGrassEnergy = Math.min(sortedEnergies[i] + currentGrass, maxGrassEnergy);
+				this.writeGrass(cell, currentGrass, newGrassEnergy);
+			}
+		}
+	}
+	
+	// Takes the given (empty) cell out of the free-cell set - the last free cell fills its position
+	private void occupyCell(int cell) {
+		if (this.offHeapFreeCells != null) {
+			int position = this.offHeapFreeCellPosition.get(cell);
+			int last = this.offHeapFreeCells.get(--this.freeCellsCount);
+			this.offHeapFreeCells.set(position, last);
+			this.offHeapFreeCellPosition.set(last, position);
+			this.offHeapFreeCellPosition.set(cell, -1);
+			return;
+		}
+		int position = this.freeCellPosition[cell];
+		int last = this.freeCells[--this.freeCellsCount];
+		this.freeCells[position] = last;
+		this.freeCellPosition[last] = position;
+		this.freeCellPosition[cell] = -1;
+	}
+	
+	// Puts the given (just emptied) cell back into the free-cell set
+	private void releaseCell(int cell) {
+		if (this.offHeapFreeCells != null) {
+			this.offHeapFreeCells.set(this.freeCellsCount, cell);
+			this.offHeapFreeCellPosition.set(cell, this.freeCellsCount++);
+			return;
+		}
+		this.freeCells[this.freeCellsCount] = cell;
+		this.freeCellPosition[cell] = this.freeCellsCount++;
+	}
+	
+	// Maps (x, y) coordinates to the index of the cell in the dense row-major fields
+	private int cellIndex(int x, int y) {
+		return y * this.sizeX + x;
+	}
+	
+	// Same as cellIndex, for both representations (the index of a sparse grid can be beyond the int range)
+	private long cellKey(int x, int y) {
+		return (long)y * this.sizeX + x;
+	}
+	
+	// Grass energy of the given cell
+	private int grassAt(long cell) {
+		if (this.grassField != null) {
+			return this.grassField[(int)cell];
+		}
+		return (this.offHeapGrass != null) ? this.offHeapGrass.get(cell) : this.sparseGrass.get(cell);
+	}
+	
+	// Writes newGrass to the given cell (currently holding oldGrass) and updates the running totals
+	private void writeGrass(long cell, int oldGrass, int newGrass) {
+		if (this.grassField != null) {
+			this.grassField[(int)cell] = newGrass;
+		} else if (this.offHeapGrass != null) {
+			this.offHeapGrass.set(cell, newGrass);
+		} else {
+			this.sparseGrass.put(cell, newGrass);
+		}
+		this.totalGrassEnergy += newGrass - oldGrass;
+		if (oldGrass > 0) {
+			this.grassPatchesCount--;
+		}
+		if (newGrass > 0) {
+			this.grassPatchesCount++;
+		}
+	}
+	
+	/*
+	 * Positions the rabbit of the given population slot at a random empty cell on the grid
+	 * Returns the index of the chosen cell (y * sizeX + x), or -1 if the grid is full
+	 */
+	public long addRabbit(int slot) {
+		if (this.sparseRabbits != null) {
+			return this.addSparseRabbit(slot);
+		}
+		if (this.freeCellsCount == 0) {
+			return -1;
+		}
+		
+		// Draw the cell straight from the free-cell set - uniform over the empty cells, whatever the density
+		if (this.offHeapRabbits != null) {
+			int added = this.offHeapFreeCells.get(this.random.nextInt(this.freeCellsCount));
+			this.occupyCell(added);
+			this.offHeapRabbits.set(added, slot + 1);
+			return added;
+		}
+		int added = this.freeCells[this.random.nextInt(this.freeCellsCount)];
+		this.occupyCell(added);
+		this.rabbitsField[added] = slot + 1;
 		return added;
 	}
+	
+	// Sparse version of addRabbit - the rabbits only cover a tiny part of such a grid,
+	//		so drawing random cells until an empty one comes up takes very few trials
+	private long addSparseRabbit(int slot) {
+		if (this.sparseRabbits.size() == this.cellsCount) {
+			return -1;
+		}
+		while (true) {
+			long cell = this.cellKey(this.random.nextInt(this.sizeX), this.random.nextInt(this.sizeY));
+			if (this.sparseRabbits.get(cell) == 0) {
+				this.sparseRabbits.put(cell, slot + 1);
+				return cell;
+			}
+		}
+	}
 
 	/*
 	 * Removes agent at given coordinates
 	 */
 	public void removeAgentAt(int x, int y) {
-		this.rabbitsSpace.putObjectAt(x, y, null);
+		if (this.sparseRabbits != null) {
+			this.sparseRabbits.remove(this.cellKey(x, y));
+			return;
+		}
+		int cell = this.cellIndex(x, y);
+		if (this.offHeapRabbits != null) {
+			if (this.offHeapRabbits.get(cell) != 0) {
+				this.offHeapRabbits.set(cell, 0);
+				this.releaseCell(cell);
+			}
+			return;
+		}
+		if (this.rabbitsField[cell] != 0) {
+			this.rabbitsField[cell] = 0;
+			this.releaseCell(cell);
+		}
+	}
+	
+	/*
+	 * Returns the population slot of the rabbit at given coordinates, or -1 if the cell is empty
+	 */
+	public int getRabbitAt(int x, int y) {
+		if (this.sparseRabbits != null) {
+			return this.sparseRabbits.get(this.cellKey(x, y)) - 1;
+		}
+		if (this.offHeapRabbits != null) {
+			return this.offHeapRabbits.get(this.cellIndex(x, y)) - 1;
+		}
+		return this.rabbitsField[this.cellIndex(x, y)] - 1;
+	}
+	
+	/*
+	 * Records that the rabbit at given coordinates now lives in another population slot
+	 */
+	public void setRabbitAt(int x, int y, int slot) {
+		if (this.sparseRabbits != null) {
+			this.sparseRabbits.put(this.cellKey(x, y), slot + 1);
+		} else if (this.offHeapRabbits != null) {
+			this.offHeapRabbits.set(this.cellIndex(x, y), slot + 1);
+		} else {
+			this.rabbitsField[this.cellIndex(x, y)] = slot + 1;
+		}
 	}
 	
 	/*
 	 * Removes grass from given cell and returns the energy it contains
 	 */
 	public int eatGrassAt(int x, int y) {
-		if (this.grassSpace.getObjectAt(x, y) != null) {
-			int grass = (Integer) this.grassSpace.getObjectAt(x, y);
-			this.grassSpace.putObjectAt(x, y, Integer.valueOf(0));
-			return grass;
+		long cell = this.cellKey(x, y);
+		int grass = this.grassAt(cell);
+		if (grass != 0) {
+			this.writeGrass(cell, grass, 0);
 		}
-		return 0;
+		return grass;
+	}
+	
+	/*
+	 * Same as eatGrassAt, but leaves the running totals alone - the caller has to report the eaten
+	 * grass through grassEaten. Used by the parallel step, where several threads eat at the same time
+	 * (dense grass only).
+	 */
+	int takeGrassAt(int x, int y) {
+		int cell = this.cellIndex(x, y);
+		int grass = this.grassField[cell];
+		this.grassField[cell] = 0;
+		return grass;
+	}
+	
+	/*
+	 * Removes grass eaten through takeGrassAt from the running totals
+	 */
+	void grassEaten(int energy, int patches) {
+		this.totalGrassEnergy -= energy;
+		this.grassPatchesCount -= patches;
 	}
 	
 	/*
@@ -108,59 +527,283 @@ public class RabbitsGrassSimulationSpace {
 	 * Returns true if successful and false otherwise
 	 */
 	public boolean moveRabbitTo(int x, int y, int newX, int newY) {
+		if (this.sparseRabbits != null) {
+			// Only move the rabbit to the new cell if it is not already occupied by another rabbit
+			long newCell = this.cellKey(newX, newY);
+			if (this.sparseRabbits.get(newCell) != 0) {
+				return false;
+			}
+			this.sparseRabbits.put(newCell, this.sparseRabbits.remove(this.cellKey(x, y)));
+			return true;
+		}
+		if (this.offHeapRabbits != null) {
+			int newCell = this.cellIndex(newX, newY);
+			if (this.offHeapRabbits.get(newCell) != 0) {
+				return false;
+			}
+			int cell = this.cellIndex(x, y);
+			this.offHeapRabbits.set(newCell, this.offHeapRabbits.get(cell));
+			this.offHeapRabbits.set(cell, 0);
+			this.rabbitMoved(cell, newCell);
+			return true;
+		}
+		boolean moveSuccessful = this.shiftRabbitTo(x, y, newX, newY);
+		if (moveSuccessful) {
+			this.rabbitMoved(this.cellIndex(x, y), this.cellIndex(newX, newY));
+		}
+		return moveSuccessful;
+	}
+	
+	/*
+	 * Same as moveRabbitTo, but leaves the free-cell set alone - the caller has to report the move
+	 * through rabbitMoved. Used by the parallel step, where several threads move rabbits at the same time
+	 * (dense rabbits only).
+	 */
+	boolean shiftRabbitTo(int x, int y, int newX, int newY) {
 		boolean moveSuccessful = false;
 		
 		// Only move the rabbit to the new cell if it is not already occupied by another rabbit
-		if (!this.isAgentSpaceCellOccupied(newX, newY)) {
-			RabbitsGrassSimulationAgent rabbit = (RabbitsGrassSimulationAgent)this.rabbitsSpace.getObjectAt(x, y);
-			this.removeAgentAt(x, y);
-			rabbit.setCoordinates(newX, newY);
-			this.rabbitsSpace.putObjectAt(newX, newY, rabbit);
+		int newCell = this.cellIndex(newX, newY);
+		if (this.rabbitsField[newCell] == 0) {
+			int cell = this.cellIndex(x, y);
+			this.rabbitsField[newCell] = this.rabbitsField[cell];
+			this.rabbitsField[cell] = 0;
 			moveSuccessful = true;
 		}
 		
 		return moveSuccessful;
 	}
 	
+	/*
+	 * Updates the free-cell set after a move made through shiftRabbitTo
+	 * Moves have to be reported in the order they were made
+	 */
+	void rabbitMoved(int cell, int newCell) {
+		this.releaseCell(cell);
+		this.occupyCell(newCell);
+	}
+	
 	// Getters and Setters section
-	public Object2DGrid getCurrentGrassSpace() {
-		return this.grassSpace;
+	public int getSizeX() {
+		return this.sizeX;
+	}
+	
+	public int getSizeY() {
+		return this.sizeY;
 	}
 	
-	public Object2DGrid getCurrentRabbitsSpace() {
-		return this.rabbitsSpace;
+	public int getGrassAt(int x, int y) {
+		return this.grassAt(this.cellKey(x, y));
+	}
+	
+	public void setGrassAt(int x, int y, int energy) {
+		long cell = this.cellKey(x, y);
+		this.writeGrass(cell, this.grassAt(cell), energy);
+	}
+	
+	public boolean isSparseGrass() {
+		return this.sparseGrass != null;
+	}
+	
+	public boolean isSparseRabbits() {
+		return this.sparseRabbits != null;
+	}
+	
+	public boolean isOffHeap() {
+		return this.offHeapGrass != null;
+	}
+	
+	public boolean isVerifyGrassTotals() {
+		return this.verifyGrassTotals;
+	}
+	
+	// Debug mode - also enabled for every space with -Drabbits.verifyGrassTotals=true
+	public void setVerifyGrassTotals(boolean verify) {
+		this.verifyGrassTotals = verify;
 	}
 	
 	/*
-	 * Returns the total sum of grass energy available
+	 * Writes the grass (dense field, or the cells holding grass) and the free-cell set to a checkpoint
+	 * (the rabbits are put back by the population when loading)
+	 */
+	void save(RabbitsGrassSimulationCheckpoint checkpoint) throws IOException {
+		if (this.grassField != null) {
+			checkpoint.putInt(0);
+			checkpoint.putInts(this.grassField, this.grassField.length);
+		} else if (this.offHeapGrass != null) {
+			// Same layout as the dense field on the heap
+			checkpoint.putInt(0);
+			this.offHeapGrass.save(checkpoint, this.cellsCount);
+		} else {
+			checkpoint.putInt(1);
+			checkpoint.putInt(this.sparseGrass.size());
+			for (int slot = 0; slot < this.sparseGrass.capacity(); slot++) {
+				if (this.sparseGrass.keyAt(slot) >= 0) {
+					checkpoint.putLong(this.sparseGrass.keyAt(slot));
+					checkpoint.putInt(this.sparseGrass.valueAt(slot));
+				}
+			}
+		}
+		if (this.rabbitsField != null) {
+			checkpoint.putInt(this.freeCellsCount);
+			checkpoint.putInts(this.freeCells, this.freeCellsCount);
+		} else if (this.offHeapRabbits != null) {
+			checkpoint.putInt(this.freeCellsCount);
+			this.offHeapFreeCells.save(checkpoint, this.freeCellsCount);
+		}
+	}
+	
+	/*
+	 * Restores the state written by save - the space is left without rabbits, the population puts them back
 	 */
-	public int getTotalGrassEnergy() {
-		int totalEnergy = 0;
-		for (int x = 0; x < this.grassSpace.getSizeX(); x++) {
-			for (int y = 0; y < this.grassSpace.getSizeY(); y++) {
-				if (this.grassSpace.getObjectAt(x, y) != null) {
-					totalEnergy += ((Integer)this.grassSpace.getObjectAt(x, y)).intValue();
+	void load(RabbitsGrassSimulationCheckpoint checkpoint) throws IOException {
+		// The grass is restored in the representation it was saved in
+		this.totalGrassEnergy = 0;
+		this.grassPatchesCount = 0;
+		int grassMode = checkpoint.getInt();
+		if (this.offHeapGrass != null) {
+			if (grassMode != 0) {
+				throw new IOException("Sparse grass in checkpoint for an off-heap space");
+			}
+			this.offHeapGrass.load(checkpoint, this.cellsCount);
+			for (int cell = 0; cell < this.cellsCount; cell++) {
+				int grass = this.offHeapGrass.get(cell);
+				this.totalGrassEnergy += grass;
+				if (grass > 0) {
+					this.grassPatchesCount++;
+				}
+			}
+		} else if (grassMode == 0) {
+			if (this.cellsCount > DENSEGRASSMAXCELLS) {
+				throw new IOException("Dense grass in checkpoint for a grid of " + this.cellsCount + " cells");
+			}
+			if (this.grassField == null) {
+				this.grassField = new int[(int)this.cellsCount];
+				this.sparseGrass = null;
+			}
+			checkpoint.getInts(this.grassField, this.grassField.length);
+			for (int cell = 0; cell < this.grassField.length; cell++) {
+				this.totalGrassEnergy += this.grassField[cell];
+				if (this.grassField[cell] > 0) {
+					this.grassPatchesCount++;
 				}
 			}
+		} else {
+			this.grassField = null;
+			this.sparseGrass = new RabbitsGrassSimulationCellMap();
+			int patches = checkpoint.getInt();
+			for (int i = 0; i < patches; i++) {
+				long cell = checkpoint.getLong();
+				int grass = checkpoint.getInt();
+				this.sparseGrass.put(cell, grass);
+				this.totalGrassEnergy += grass;
+				this.grassPatchesCount++;
+			}
+		}
+		
+		if (this.sparseRabbits != null) {
+			this.sparseRabbits.clear();
+			return;
+		}
+		// The order of the free cells decides where the next rabbits are placed, so it is restored as saved
+		this.freeCellsCount = checkpoint.getInt();
+		if (this.freeCellsCount < 0 || this.freeCellsCount > this.cellsCount) {
+			throw new IOException("Invalid free cells count in checkpoint: " + this.freeCellsCount);
+		}
+		if (this.offHeapRabbits != null) {
+			this.offHeapFreeCells.load(checkpoint, this.freeCellsCount);
+			for (int cell = 0; cell < this.cellsCount; cell++) {
+				this.offHeapFreeCellPosition.set(cell, -1);
+				this.offHeapRabbits.set(cell, 0);
+			}
+			for (int position = 0; position < this.freeCellsCount; position++) {
+				this.offHeapFreeCellPosition.set(this.offHeapFreeCells.get(position), position);
+			}
+			return;
+		}
+		checkpoint.getInts(this.freeCells, this.freeCellsCount);
+		Arrays.fill(this.freeCellPosition, -1);
+		for (int position = 0; position < this.freeCellsCount; position++) {
+			this.freeCellPosition[this.freeCells[position]] = position;
 		}
-		return totalEnergy;
+		Arrays.fill(this.rabbitsField, 0);
+	}
+	
+	/*
+	 * Returns the number of cells without a rabbit
+	 */
+	public long getFreeCellsCount() {
+		if (this.sparseRabbits != null) {
+			return this.cellsCount - this.sparseRabbits.size();
+		}
+		return this.freeCellsCount;
+	}
+	
+	/*
+	 * Returns a Repast view of the grass field for the display
+	 * The view is only created on first use, so runs without a GUI never allocate it
+	 */
+	public Discrete2DSpace getCurrentGrassSpace() {
+		if (this.grassView == null) {
+			this.grassView = new RabbitsGrassSimulationGrassView(this);
+		}
+		return this.grassView;
+	}
+	
+	/*
+	 * Returns the total sum of grass energy available
+	 */
+	public long getTotalGrassEnergy() {
+		if (this.verifyGrassTotals) {
+			this.checkGrassTotals();
+		}
+		return this.totalGrassEnergy;
 	}
 	
 	/*
 	 * Return the number of grass patches in the space
 	 */
-	public int getGrassPatchesCount() {
-		int count = 0;
-		for (int x = 0; x < this.grassSpace.getSizeX(); x++) {
-			for (int y = 0; y < this.grassSpace.getSizeY(); y++) {
-				if (this.grassSpace.getObjectAt(x, y) != null) {
-					int grassValue = ((Integer)this.grassSpace.getObjectAt(x, y)).intValue();
-					if (grassValue > 0) {
-						count ++;
-					}
+	public long getGrassPatchesCount() {
+		if (this.verifyGrassTotals) {
+			this.checkGrassTotals();
+		}
+		return this.grassPatchesCount;
+	}
+	
+	/*
+	 * Recomputes both grass totals with a full scan of the field and fails if the running totals drifted
+	 */
+	public void checkGrassTotals() {
+		long totalEnergy = 0;
+		long count = 0;
+		if (this.grassField != null) {
+			for (int i = 0; i < this.grassField.length; i++) {
+				totalEnergy += this.grassField[i];
+				if (this.grassField[i] > 0) {
+					count ++;
 				}
 			}
+		} else if (this.offHeapGrass != null) {
+			for (int cell = 0; cell < this.cellsCount; cell++) {
+				int grass = this.offHeapGrass.get(cell);
+				totalEnergy += grass;
+				if (grass > 0) {
+					count ++;
+				}
+			}
+		} else {
+			for (int slot = 0; slot < this.sparseGrass.capacity(); slot++) {
+				if (this.sparseGrass.keyAt(slot) >= 0) {
+					totalEnergy += this.sparseGrass.valueAt(slot);
+					count ++;
+				}
+			}
+		}
+		
+		if (totalEnergy != this.totalGrassEnergy || count != this.grassPatchesCount) {
+			throw new IllegalStateException("Grass totals out of sync: tracked energy " + this.totalGrassEnergy
+					+ " / patches " + this.grassPatchesCount + ", scanned energy " + totalEnergy
+					+ " / patches " + count);
 		}
-		return count;
 	}
 }
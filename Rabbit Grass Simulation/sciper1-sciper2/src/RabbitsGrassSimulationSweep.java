@@ -0,0 +1,391 @@
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Class that sweeps the parameters of the rabbits grass simulation. Every
+ * combination of the swept parameter values is run headless as an independent
+ * RabbitsGrassSimulationModel on a fork-join pool (one worker per core by
+ * default), each with its own seed derived from the sweep seed and the index of
+ * the run. One line of aggregated results is streamed to the output file as soon
+ * as a run finishes, so lines are in completion order - the run index identifies them.
+ *
+ * Every configuration can be run as an ensemble of Replicates runs with different seeds. A run
+ * stops before its tick budget once the rabbits are extinct (unless StopOnExtinction=0) or, if
+ * SteadyWindow is set, once both the rabbit count and the grass energy are steady over the last
+ * SteadyWindow ticks (see SteadyStateDetector). A worker freed by a run that stops early takes
+ * the next queued run right away. The statistics of a run cover the ticks it actually ran.
+ *
+ * Usage: RabbitsGrassSimulationSweep [Ticks=n] [Output=file] [Threads=n] [Seed=s] [Replicates=n]
+ * [StopOnExtinction=0|1] [SteadyWindow=n] [SteadyTolerance=x] [<InitParam>=values ...]
+ * where values is a single value, a list (10,20,50) or a range with step (from:to:step), e.g.
+ * GridSize=20,50,100 GrassGrowthRate=5:50:5 BirthThreshold=10 MaxGrassEnergy=10:20:5
+ *
+ * @author
+ */
+public class RabbitsGrassSimulationSweep {
+
+	private static final int DEFAULTTICKS = 1000;
+	private static final String DEFAULTOUTPUT = "rabbits_grass_sweep.csv";
+	private static final long DEFAULTSEED = 42;
+	private static final double DEFAULTSTEADYTOLERANCE = 0.01;
+
+	private int ticks = DEFAULTTICKS;
+	private long seed = DEFAULTSEED;
+	// Runs per configuration, each with its own seed
+	private int replicates = 1;
+	private boolean stopOnExtinction = true;
+	// Length (in ticks) of the steady state test window, 0 to run every configuration for its full tick budget
+	private int steadyWindow = 0;
+	private double steadyTolerance = DEFAULTSTEADYTOLERANCE;
+	// Names of the swept model parameters and the values each of them takes
+	private List<String> parameterNames = new ArrayList<String>();
+	private List<long[]> parameterValues = new ArrayList<long[]>();
+
+	private BufferedWriter out;
+
+	public static void main(String[] args) throws IOException {
+		RabbitsGrassSimulationSweep sweep = new RabbitsGrassSimulationSweep();
+		String output = DEFAULTOUTPUT;
+		int threads = Runtime.getRuntime().availableProcessors();
+
+		for (String arg : args) {
+			int separator = arg.indexOf('=');
+			if (separator < 0) {
+				throw new IllegalArgumentException("Expected <Name>=<values>, got: " + arg);
+			}
+			String name = arg.substring(0, separator);
+			String value = arg.substring(separator + 1);
+
+			if (name.equals("Ticks")) {
+				sweep.ticks = Integer.parseInt(value);
+			} else if (name.equals("Output")) {
+				output = value;
+			} else if (name.equals("Threads")) {
+				threads = Integer.parseInt(value);
+			} else if (name.equals("Seed")) {
+				sweep.seed = Long.parseLong(value);
+			} else if (name.equals("Replicates")) {
+				sweep.replicates = Integer.parseInt(value);
+			} else if (name.equals("StopOnExtinction")) {
+				sweep.stopOnExtinction = Integer.parseInt(value) != 0;
+			} else if (name.equals("SteadyWindow")) {
+				sweep.steadyWindow = Integer.parseInt(value);
+			} else if (name.equals("SteadyTolerance")) {
+				sweep.steadyTolerance = Double.parseDouble(value);
+			} else {
+				sweep.addParameter(name, parseValues(value));
+			}
+		}
+
+		long start = System.nanoTime();
+		int runs = sweep.run(output, threads);
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.println("Ran " + runs + " runs on " + threads + " threads in "
+				+ String.format("%.3f", seconds) + " s, results written to " + output);
+	}
+
+	/*
+	 * Parses "v", "v1,v2,..." or "from:to:step" (both ends included)
+	 */
+	private static long[] parseValues(String text) {
+		if (text.indexOf(':') >= 0) {
+			String[] range = text.split(":");
+			long from = Long.parseLong(range[0]);
+			long to = Long.parseLong(range[1]);
+			long step = (range.length > 2) ? Long.parseLong(range[2]) : 1;
+			if (step <= 0 || to < from) {
+				throw new IllegalArgumentException("Invalid range: " + text);
+			}
+			long[] values = new long[(int)((to - from) / step) + 1];
+			for (int i = 0; i < values.length; i++) {
+				values[i] = from + i * step;
+			}
+			return values;
+		}
+
+		String[] items = text.split(",");
+		long[] values = new long[items.length];
+		for (int i = 0; i < items.length; i++) {
+			values[i] = Long.parseLong(items[i].trim());
+		}
+		return values;
+	}
+
+	public void addParameter(String name, long[] values) {
+		this.parameterNames.add(name);
+		this.parameterValues.add(values);
+	}
+
+	/*
+	 * Returns the total number of runs in the sweep - every parameter combination times the replicates
+	 */
+	public int getRunsCount() {
+		long runs = this.replicates;
+		for (long[] values : this.parameterValues) {
+			runs *= values.length;
+		}
+		return Math.toIntExact(runs);
+	}
+
+	/*
+	 * Runs every configuration of the sweep on a pool of the given number of threads
+	 * and streams one line per finished run to output. Returns the number of runs.
+	 */
+	public int run(String output, int threads) throws IOException {
+		int runs = this.getRunsCount();
+		this.out = new BufferedWriter(new FileWriter(output));
+		this.writeHeader();
+
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>(runs);
+			for (int run = 0; run < runs; run++) {
+				final int runIndex = run;
+				tasks.add(pool.submit(new Runnable() {
+					public void run() {
+						runConfiguration(runIndex);
+					}
+				}));
+			}
+			for (ForkJoinTask<?> task : tasks) {
+				task.join();
+			}
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		} finally {
+			pool.shutdown();
+			this.out.close();
+		}
+		return runs;
+	}
+
+	/*
+	 * Derives the seed of a run from the sweep seed, so that every run is reproducible on its own
+	 * (consecutive run indexes give unrelated seeds)
+	 */
+	public static long runSeed(long sweepSeed, int runIndex) {
+		return RabbitsGrassRandom.mix64(sweepSeed + (runIndex + 1) * 0x9E3779B97F4A7C15L);
+	}
+
+	/*
+	 * Builds and runs the model of the given run index and writes its summary
+	 */
+	private void runConfiguration(int runIndex) {
+		long[] configuration = new long[this.parameterNames.size()];
+		// Replicates of a configuration have consecutive run indexes
+		int replicate = runIndex % this.replicates;
+		int rest = runIndex / this.replicates;
+		for (int p = configuration.length - 1; p >= 0; p--) {
+			long[] values = this.parameterValues.get(p);
+			configuration[p] = values[rest % values.length];
+			rest /= values.length;
+		}
+
+		RabbitsGrassSimulationModel model = new RabbitsGrassSimulationModel();
+		for (int p = 0; p < configuration.length; p++) {
+			RabbitsGrassSimulationBatch.setParameter(model, this.parameterNames.get(p), configuration[p]);
+		}
+		long runSeed = runSeed(this.seed, runIndex);
+		model.setSeed(runSeed);
+		model.setHeadless(true);
+		model.setup();
+		model.buildModel();
+
+		RunSummary summary = new RunSummary();
+		SteadyStateDetector steadyState = (this.steadyWindow > 0)
+				? new SteadyStateDetector(this.steadyWindow, this.steadyTolerance) : null;
+		String stopReason = "ticks";
+		try {
+			for (int tick = 1; tick <= this.ticks; tick++) {
+				model.step();
+				summary.add(tick, model);
+
+				if (this.stopOnExtinction && model.getRabbitsCount() == 0) {
+					stopReason = "extinction";
+					break;
+				}
+				if (steadyState != null && steadyState.add(model.getRabbitsCount(), model.getSpace().getTotalGrassEnergy())) {
+					stopReason = "steady";
+					break;
+				}
+			}
+		} finally {
+			model.shutdown();
+		}
+
+		StringBuilder line = new StringBuilder();
+		line.append(runIndex).append(',').append(replicate).append(',').append(runSeed);
+		for (long value : configuration) {
+			line.append(',').append(value);
+		}
+		line.append(',').append(summary.toCsv()).append(',').append(stopReason).append('\n');
+		this.writeLine(line.toString());
+	}
+
+	private void writeHeader() throws IOException {
+		StringBuilder header = new StringBuilder("run,replicate,seed");
+		for (String name : this.parameterNames) {
+			header.append(',').append(name);
+		}
+		header.append(',').append(RunSummary.CSVHEADER).append(",stopReason\n");
+		this.out.write(header.toString());
+		this.out.flush();
+	}
+
+	// Runs finish on several threads - lines are written (and flushed) one at a time
+	private synchronized void writeLine(String line) {
+		try {
+			this.out.write(line);
+			this.out.flush();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/*
+	 * Aggregated statistics of one run, updated once per tick
+	 */
+	static class RunSummary {
+
+		static final String CSVHEADER = "ticks,finalRabbits,minRabbits,maxRabbits,meanRabbits,"
+				+ "births,deaths,meanGrassEnergy,meanGrassPatches,extinctionTick";
+
+		private int ticks = 0;
+		private int finalRabbits = 0;
+		private int minRabbits = Integer.MAX_VALUE;
+		private int maxRabbits = 0;
+		private long rabbitsSum = 0;
+		private long births = 0;
+		private long deaths = 0;
+		private long grassEnergySum = 0;
+		private long grassPatchesSum = 0;
+		private int extinctionTick = -1;
+
+		void add(int tick, RabbitsGrassSimulationModel model) {
+			int rabbits = model.getRabbitsCount();
+			this.ticks = tick;
+			this.finalRabbits = rabbits;
+			this.minRabbits = Math.min(this.minRabbits, rabbits);
+			this.maxRabbits = Math.max(this.maxRabbits, rabbits);
+			this.rabbitsSum += rabbits;
+			this.births += model.getLastBirths();
+			this.deaths += model.getLastDeaths();
+			this.grassEnergySum += model.getSpace().getTotalGrassEnergy();
+			this.grassPatchesSum += model.getSpace().getGrassPatchesCount();
+			if (rabbits == 0 && this.extinctionTick < 0) {
+				this.extinctionTick = tick;
+			}
+		}
+
+		String toCsv() {
+			double ticks = Math.max(this.ticks, 1);
+			return this.ticks + "," + this.finalRabbits + "," + (this.ticks == 0 ? 0 : this.minRabbits) + ","
+					+ this.maxRabbits + "," + String.format("%.3f", this.rabbitsSum / ticks) + ","
+					+ this.births + "," + this.deaths + ","
+					+ String.format("%.3f", this.grassEnergySum / ticks) + ","
+					+ String.format("%.3f", this.grassPatchesSum / ticks) + "," + this.extinctionTick;
+		}
+	}
+
+	/*
+	 * Rolling steady state test over the last window ticks of the rabbit count and the grass energy.
+	 * A series is steady when its coefficient of variation over the window is at most tolerance and the
+	 * means of the older and the newer half of the window differ by at most tolerance times the mean
+	 * (the second condition rejects slow trends that a plain variance test lets through).
+	 * Sums are kept per half window, so every tick costs O(1).
+	 */
+	static class SteadyStateDetector {
+
+		private final int half;
+		private final double tolerance;
+		private final int[] rabbits;
+		private final long[] grass;
+		// Number of values in the window and index the next value goes to (the oldest one once the window is full)
+		private int count = 0;
+		private int position = 0;
+		// Sums of the older and newer half of the window, and sums of the squares of the whole window
+		private long rabbitsOlder = 0;
+		private long rabbitsNewer = 0;
+		private long grassOlder = 0;
+		private long grassNewer = 0;
+		private double rabbitsSquares = 0;
+		private double grassSquares = 0;
+
+		SteadyStateDetector(int window, double tolerance) {
+			// Rounded up to an even window, split in two halves
+			this.half = (window + 1) / 2;
+			this.tolerance = tolerance;
+			this.rabbits = new int[2 * this.half];
+			this.grass = new long[2 * this.half];
+		}
+
+		/*
+		 * Adds the values of the last tick and returns true if both series are steady over the window
+		 */
+		boolean add(int rabbits, long grass) {
+			int window = this.rabbits.length;
+			if (this.count == window) {
+				// The oldest value leaves the older half
+				this.rabbitsOlder -= this.rabbits[this.position];
+				this.grassOlder -= this.grass[this.position];
+				this.rabbitsSquares -= (double)this.rabbits[this.position] * this.rabbits[this.position];
+				this.grassSquares -= (double)this.grass[this.position] * this.grass[this.position];
+			} else {
+				this.count++;
+			}
+
+			this.rabbits[this.position] = rabbits;
+			this.grass[this.position] = grass;
+			this.rabbitsNewer += rabbits;
+			this.grassNewer += grass;
+			this.rabbitsSquares += (double)rabbits * rabbits;
+			this.grassSquares += (double)grass * grass;
+
+			// The value added half ticks ago moves from the newer to the older half
+			if (this.count > this.half) {
+				int moved = (this.position - this.half + window) % window;
+				this.rabbitsNewer -= this.rabbits[moved];
+				this.rabbitsOlder += this.rabbits[moved];
+				this.grassNewer -= this.grass[moved];
+				this.grassOlder += this.grass[moved];
+			}
+
+			this.position++;
+			if (this.position == window) {
+				this.position = 0;
+				this.recomputeSquares();
+			}
+
+			return this.count == window
+					&& this.isSteady(this.rabbitsOlder, this.rabbitsNewer, this.rabbitsSquares)
+					&& this.isSteady(this.grassOlder, this.grassNewer, this.grassSquares);
+		}
+
+		private boolean isSteady(long older, long newer, double squares) {
+			double window = 2 * this.half;
+			double mean = (older + newer) / window;
+			double variance = Math.max(0, squares / window - mean * mean);
+			if (mean == 0) {
+				return variance == 0;
+			}
+			return Math.sqrt(variance) <= this.tolerance * mean
+					&& Math.abs(newer - older) / (double)this.half <= this.tolerance * mean;
+		}
+
+		// The running sums of squares are rebuilt once per window, so rounding errors cannot pile up
+		private void recomputeSquares() {
+			this.rabbitsSquares = 0;
+			this.grassSquares = 0;
+			for (int i = 0; i < this.count; i++) {
+				this.rabbitsSquares += (double)this.rabbits[i] * this.rabbits[i];
+				this.grassSquares += (double)this.grass[i] * this.grass[i];
+			}
+		}
+	}
+}
@@ -0,0 +1,97 @@
+package template;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/*
+ * Leveled, buffered console logger of the agents. Messages below the level are dropped
+ * before anything is built (check isEnabled first for messages made of several parts),
+ * the others are collected in a buffer and written to the console in blocks - whenever
+ * the buffer is full, after a warning or an error, and when the JVM exits.
+ */
+public class AgentLogger {
+
+	public enum Level {
+		DEBUG,
+		INFO,
+		WARN,
+		ERROR,
+		OFF
+	}
+
+	private static final int BUFFERSIZE = 1 << 16;
+
+	private Level level;
+	private Writer out;
+
+	public AgentLogger(Level level) {
+		this.level = level;
+		this.out = new BufferedWriter(new OutputStreamWriter(System.out), BUFFERSIZE);
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			@Override
+			public void run() {
+				flush();
+			}
+		});
+	}
+
+	/*
+	 * Parses a level name (any case), e.g. read from agents.xml
+	 */
+	public static Level parseLevel(String name) {
+		try {
+			return Level.valueOf(name.trim().toUpperCase());
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Unknown log level '" + name + "', expected one of debug, info, warn, error, off");
+		}
+	}
+
+	public boolean isEnabled(Level messageLevel) {
+		return messageLevel.compareTo(level) >= 0 && level != Level.OFF;
+	}
+
+	public void debug(String message) {
+		log(Level.DEBUG, message);
+	}
+
+	public void info(String message) {
+		log(Level.INFO, message);
+	}
+
+	public void warn(String message) {
+		log(Level.WARN, message);
+	}
+
+	public void error(String message) {
+		log(Level.ERROR, message);
+	}
+
+	public synchronized void log(Level messageLevel, String message) {
+		if (!isEnabled(messageLevel)) {
+			return;
+		}
+		try {
+			out.write(message);
+			out.write('\n');
+			if (messageLevel.compareTo(Level.WARN) >= 0) {
+				out.flush();
+			}
+		} catch (IOException e) {
+			// Nothing better to do than dropping the message if the console fails
+		}
+	}
+
+	public synchronized void flush() {
+		try {
+			out.flush();
+		} catch (IOException e) {
+			// Same as in log
+		}
+	}
+
+	public Level getLevel() {
+		return level;
+	}
+}
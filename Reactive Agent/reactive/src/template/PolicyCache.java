@@ -0,0 +1,125 @@
+package template;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * Binary cache of a learnt policy - the value table and the best action of every state,
+ * together with the key of the inputs it was learnt from (see Reactive.policyKey).
+ * The file is read and written in one buffer, and replaced atomically when written - no
+ * mapping of it is kept alive while it is being replaced.
+ *
+ * Layout: magic, version, number of states (ints), key (long), V (doubles), best actions (ints)
+ */
+public class PolicyCache {
+
+	private static final int MAGIC = 0x52504F4C;
+	private static final int VERSION = 1;
+	private static final int HEADERBYTES = 4 + 4 + 4 + 8;
+
+	private long key;
+	private double[] vTable;
+	private int[] bestActions;
+
+	private PolicyCache(long key, double[] vTable, int[] bestActions) {
+		this.key = key;
+		this.vTable = vTable;
+		this.bestActions = bestActions;
+	}
+
+	/*
+	 * Reads the policy cached in the given file
+	 * Returns null if there is no such file, or if it is not a cache of a policy over numStates states
+	 */
+	public static PolicyCache load(String fileName, int numStates) throws IOException {
+		FileChannel channel;
+		try {
+			channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+		} catch (NoSuchFileException e) {
+			return null;
+		}
+		try {
+			long size = HEADERBYTES + (long)numStates * (8 + 4);
+			if (channel.size() != size) {
+				return null;
+			}
+			ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(size));
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer) < 0) {
+					throw new IOException("Policy cache " + fileName + " is truncated");
+				}
+			}
+			buffer.flip();
+			if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION || buffer.getInt() != numStates) {
+				return null;
+			}
+			long key = buffer.getLong();
+			double[] vTable = new double[numStates];
+			int[] bestActions = new int[numStates];
+			buffer.asDoubleBuffer().get(vTable);
+			buffer.position(buffer.position() + 8 * numStates);
+			buffer.asIntBuffer().get(bestActions);
+			return new PolicyCache(key, vTable, bestActions);
+		} finally {
+			channel.close();
+		}
+	}
+
+	/*
+	 * Writes a policy to the given file, replacing the previous cache only once the new one is complete
+	 */
+	public static void save(String fileName, long key, double[] vTable, int[] bestActions) throws IOException {
+		Path path = Paths.get(fileName).toAbsolutePath();
+		Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+		int numStates = vTable.length;
+		ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(HEADERBYTES + (long)numStates * (8 + 4)));
+		buffer.putInt(MAGIC);
+		buffer.putInt(VERSION);
+		buffer.putInt(numStates);
+		buffer.putLong(key);
+		buffer.asDoubleBuffer().put(vTable);
+		buffer.position(buffer.position() + 8 * numStates);
+		buffer.asIntBuffer().put(bestActions);
+		buffer.rewind();
+		FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.WRITE);
+		try {
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			channel.force(true);
+		} finally {
+			channel.close();
+		}
+		Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/*
+	 * Mixes value into a running 64-bit hash
+	 */
+	public static long hash(long hash, long value) {
+		long z = hash ^ (value + 0x9E3779B97F4A7C15L + (hash << 6) + (hash >>> 2));
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	public long getKey() {
+		return key;
+	}
+
+	public double[] getVTable() {
+		return vTable;
+	}
+
+	public int[] getBestActions() {
+		return bestActions;
+	}
+}
@@ -1,7 +1,12 @@
 package template;
 
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.Random;
-import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import logist.simulation.Vehicle;
 import logist.agent.Agent;
@@ -17,9 +22,10 @@ import template.RoadAction.RoadActionType;
 
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class Reactive implements ReactiveBehavior {
 
@@ -27,19 +33,76 @@ public class Reactive implements ReactiveBehavior {
 	private double pPickup;
 	private int numActions;
 	private Agent myAgent;
+	// Number of threads of the value iteration
+	private int threads;
+	// Variant of the value iteration: GAUSSSEIDEL, JACOBI or PRIORITIZED
+	private String learning;
+	// Number of state backups (Bellman updates of a state) made by the last learning
+	private long backups;
+	private AgentLogger log;
+	
+	// The total profit is logged at INFO level every PROFITREPORTINTERVAL actions (at DEBUG level after every action)
+	private static final int PROFITREPORTINTERVAL = 100;
+	// Entries of the policy table that are not a city to move to
+	private static final int PICKUP = -1;
+	private static final int RANDOMMOVE = -2;
+	// Blocks of states per thread in a parallel sweep, so that threads finishing early pick up more work
+	private static final int BLOCKSPERTHREAD = 4;
+	// Values of the learning property
+	private static final String GAUSSSEIDEL = "gauss-seidel";
+	private static final String JACOBI = "jacobi";
+	private static final String PRIORITIZED = "prioritized";
 	
-	private static Set<RoadAction> possibleActions = new HashSet<RoadAction>(); //set of all possible cities to go to
-	private static Set<State> possibleStates = new HashSet<State>();
 	private List<City> allCities = new ArrayList<City>();
 	
-	// Q-table
-	private Map<State, HashMap<RoadAction, Double>> qTable = new HashMap<State, HashMap<RoadAction, Double>>();
-	// Value table
-	private HashMap<State, Double> vTable = new HashMap<State, Double>();
-	// Best action
-    private HashMap<State, RoadAction> bestActions = new HashMap<State, RoadAction>();
-	// Reward table
-	private Map<State, HashMap<RoadAction, Double>> rTable = new HashMap<State, HashMap<RoadAction, Double>>();
+	// States and actions are numbered once at setup and every table is a flat array indexed by these numbers:
+	//		state = currentCity.id * numCities + destinationCity.id (currentCity.id for "no task")
+	//		action = nextCity.id * 2 + 0 for a MOVE, + 1 for a PICKUP
+	private int numCities;
+	private int numStates;
+	private int numRoadActions;
+	private State[] possibleStates;
+	private RoadAction[] possibleActions;
+	
+	// Q-table, indexed by state * numRoadActions + action
+	private double[] qTable;
+	// Value table, indexed by state
+	private double[] vTable;
+	// Value table of the previous sweep, only used by the parallel value iteration
+	private double[] previousVTable;
+	// Best action of every state (-1 if none)
+	private int[] bestActions;
+	// Reward table, indexed like the Q-table - NaN for the illegal actions of a state. The rewards of the MOVE
+	//		actions are stored per unit of cost (minus the distance), the only part of the model that depends
+	//		on the vehicle, and multiplied by costPerKm when learning
+	private double[] rTable;
+	// Cost per km of the vehicles whose policy is being learnt
+	private int costPerKm;
+	
+	// Task probabilities between cities (from.id * numCities + to.id), neighbor relation of the cities
+	//		and highest task probability from every city, read once from the topology and the distribution
+	private double[] taskProbabilities;
+	private boolean[] neighbors;
+	private double[] highestTaskPotential;
+	
+	// Sparse transition matrix (compressed rows): the successors of the row state * numRoadActions + action
+	//		are successorStates[successorStart[row] .. successorStart[row + 1]), reached with successorProbabilities
+	private int[] successorStart;
+	private int[] successorStates;
+	private double[] successorProbabilities;
+	// Transposed matrix for the prioritized sweeping: the states with a transition to state are
+	//		predecessorStates[predecessorStart[state] .. predecessorStart[state + 1]), with that probability
+	private int[] predecessorStart;
+	private int[] predecessorStates;
+	private double[] predecessorProbabilities;
+	
+	// Learnt policy compiled for act: policyTable[currentCity.id][destinationCity.id, or numCities without a task]
+	//		is the id of the city to move to, PICKUP or RANDOMMOVE
+	private int[][] policyTable;
+	// Policy of every vehicle of the agent, indexed by vehicle id - vehicles with the same cost share one
+	private int[][][] vehiclePolicies;
+	// Move action to every city - actions only hold their destination, so they are shared by all calls to act
+	private Move[] moveTo;
 	
 	@Override
 	public void setup(Topology topology, TaskDistribution td, Agent agent) {
@@ -47,24 +110,152 @@ public class Reactive implements ReactiveBehavior {
 		// Reads the discount factor from the agents.xml file.
 		// If the property is not present it defaults to 0.95
 		Double discount = agent.readProperty("discount-factor", Double.class, 0.95);
+		// Reads the file caching the learnt policy between runs, no cache if the property is not present (or empty)
+		//		The policy of the vehicles costing c per km is cached in <policy-cache>.<c>
+		String policyCache = agent.readProperty("policy-cache", String.class, "");
+		// Reads the level of the console output (debug, info, warn, error or off), info by default
+		String logLevel = agent.readProperty("log-level", String.class, "info");
+		// Reads the number of threads learning the policy, 1 by default
+		Integer learningThreads = agent.readProperty("threads", Integer.class, 1);
+		// Reads the variant of the value iteration: gauss-seidel (in place), jacobi (in parallel on the threads)
+		//		or prioritized (prioritized sweeping) - gauss-seidel on a single thread and jacobi otherwise by default
+		String learningVariant = agent.readProperty("learning", String.class, (learningThreads > 1) ? JACOBI : GAUSSSEIDEL);
 
 		this.random = new Random();
 		this.pPickup = discount;
 		this.numActions = 0;
 		this.myAgent = agent;
+		this.threads = learningThreads;
+		if (threads < 1) {
+			throw new IllegalArgumentException("Invalid number of learning threads " + threads + ", expected at least 1");
+		}
+		this.learning = learningVariant;
+		if (!learning.equals(GAUSSSEIDEL) && !learning.equals(JACOBI) && !learning.equals(PRIORITIZED)) {
+			throw new IllegalArgumentException("Unknown learning '" + learning + "', expected gauss-seidel, jacobi or prioritized");
+		}
+		this.log = new AgentLogger(AgentLogger.parseLevel(logLevel));
 		this.allCities = topology.cities();
 
 		//This should be changed based on the action/state implementation
 		initPossibleActions(topology.cities());
 		initPossibleStates(topology.cities());
+		initTransitionModel(td);
 
 		//Populate the tables
 		initQTable();
 		initVTable();
 		initBestActionsTable();
-		initRTable(td, agent.vehicles().iterator().next());
+		initRTable(td);
+		initMoves();
 
+		// One policy per cost per km, the rest of the model (states, transitions) is shared by all the vehicles
+		//		Each policy after the first starts from the values of the previous one, which are close
+		Set<Integer> costs = new LinkedHashSet<Integer>();
+		int maxVehicleId = 0;
+		for (Vehicle vehicle : agent.vehicles()) {
+			costs.add(vehicle.costPerKm());
+			maxVehicleId = Math.max(maxVehicleId, vehicle.id());
+		}
+		Map<Integer, int[][]> costPolicies = new HashMap<Integer, int[][]>();
+		for (int cost : costs) {
+			costPerKm = cost;
+			if (policyCache.isEmpty()) {
+				if (successorStart == null) {
+					initTransitionMatrix();
+				}
+				reinforcementLearningAlgorithm(td);
+			} else {
+				// Every cost has its own cache file, whatever the other vehicles of the agent (or of other agents)
+				learnWithPolicyCache(policyCache + "." + cost, policyKey(td), td);
+			}
+			compilePolicy();
+			costPolicies.put(cost, policyTable);
+		}
+		vehiclePolicies = new int[maxVehicleId + 1][][];
+		for (Vehicle vehicle : agent.vehicles()) {
+			vehiclePolicies[vehicle.id()] = costPolicies.get(vehicle.costPerKm());
+		}
+	}
+	
+	/*
+	 * Takes the policy from the cache if it was learnt from the same inputs (without even building the
+	 * transition matrix), otherwise learns it - starting
+	 * from the cached values if the cache has the same states (inputs that changed slightly) - and caches it
+	 */
+	private void learnWithPolicyCache(String fileName, long key, TaskDistribution td) {
+		PolicyCache cache = null;
+		try {
+			cache = PolicyCache.load(fileName, numStates);
+		} catch (IOException e) {
+			log.warn("Could not read the policy cache " + fileName + ": " + e);
+		}
+		
+		if (cache != null && !isConsistentPolicy(cache.getVTable(), cache.getBestActions())) {
+			// A damaged cache is neither used nor warm started from, the policy is learnt again and rewritten
+			log.warn("Ignoring the policy cache " + fileName + ": its actions are not legal in their states");
+			cache = null;
+		}
+		if (cache != null && cache.getKey() == key) {
+			vTable = cache.getVTable();
+			bestActions = cache.getBestActions();
+			return;
+		}
+		if (cache != null) {
+			// Warm start - the cached values are close to the new ones, so fewer iterations are needed
+			System.arraycopy(cache.getVTable(), 0, vTable, 0, numStates);
+		}
+		if (successorStart == null) {
+			initTransitionMatrix();
+		}
 		reinforcementLearningAlgorithm(td);
+		
+		try {
+			PolicyCache.save(fileName, key, vTable, bestActions);
+		} catch (IOException e) {
+			log.warn("Could not write the policy cache " + fileName + ": " + e);
+		}
+	}
+	
+	/*
+	 * Checks that every best action is a legal action of its state (it has a reward) and that the states
+	 * without a best action are worth nothing, as the Bellman update leaves them
+	 */
+	private boolean isConsistentPolicy(double[] values, int[] actions) {
+		for (int state = 0; state < numStates; state++) {
+			int action = actions[state];
+			if (values[state] != values[state]) {
+				return false;
+			}
+			if (action == -1) {
+				if (values[state] != 0.0) {
+					return false;
+				}
+			} else if (action < -1 || action >= numRoadActions || Double.isNaN(rTable[state * numRoadActions + action])) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/*
+	 * Key of the inputs of the learning - the topology, the task distribution, the discount factor
+	 * and the cost per km of the vehicles (part of the rewards)
+	 */
+	private long policyKey(TaskDistribution td) {
+		long key = PolicyCache.hash(numCities, Double.doubleToLongBits(pPickup));
+		key = PolicyCache.hash(key, costPerKm);
+		for (City from : allCities) {
+			key = PolicyCache.hash(key, from.name.hashCode());
+			for (City neighbor : from.neighbors()) {
+				key = PolicyCache.hash(key, neighbor.id);
+				key = PolicyCache.hash(key, Double.doubleToLongBits(from.distanceTo(neighbor)));
+			}
+			for (City to : allCities) {
+				key = PolicyCache.hash(key, Double.doubleToLongBits(td.probability(from, to)));
+				key = PolicyCache.hash(key, td.reward(from, to));
+			}
+		}
+		return key;
 	}
 	
 	@Override
@@ -73,7 +264,9 @@ public class Reactive implements ReactiveBehavior {
 		
 		if (vehicle.name().equals("Intelligent Vehicle")) {
 			action = intelligentAgentAct(vehicle, availableTask);
-			System.out.println(vehicle.costPerKm());
+			if (log.isEnabled(AgentLogger.Level.DEBUG)) {
+				log.debug("Cost per km of " + vehicle.name() + ": " + vehicle.costPerKm());
+			}
 
 		} else if (vehicle.name().equals("Dummy Vehicle")) {
 			action = dummyAgentAct(vehicle, availableTask);
@@ -82,7 +275,10 @@ public class Reactive implements ReactiveBehavior {
 		}
 				
 		if (numActions >= 1) {
-			System.out.println("The total profit after "+numActions+" actions is "+myAgent.getTotalProfit()+" (average profit: "+(myAgent.getTotalProfit() / (double)numActions)+")");
+			AgentLogger.Level level = (numActions % PROFITREPORTINTERVAL == 0) ? AgentLogger.Level.INFO : AgentLogger.Level.DEBUG;
+			if (log.isEnabled(level)) {
+				log.log(level, "The total profit after "+numActions+" actions is "+myAgent.getTotalProfit()+" (average profit: "+(myAgent.getTotalProfit() / (double)numActions)+")");
+			}
 		}
 		numActions++;
 		
@@ -91,62 +287,182 @@ public class Reactive implements ReactiveBehavior {
 	
 	/*
 	 * Reinforcement learning algorithm where the best action for a given state is being learnt
+	 * Value iteration over the flat tables - a sweep allocates nothing. By default V is updated in place
+	 * (Gauss-Seidel), see jacobiValueIteration and prioritizedSweeping for the other variants
 	 */
 	public void reinforcementLearningAlgorithm(TaskDistribution td) {
-		boolean hasConverged = false;
-		while (!hasConverged) {
-			HashMap<State, Double> previousVTable = new HashMap<State, Double> (vTable);
-
-			for (State state : qTable.keySet()) {
-				for (RoadAction action : qTable.get(state).keySet()) {		
-					if (rTable.containsKey(state)) {
-						if (rTable.get(state).containsKey(action)) {
-							double value = rTable.get(state).get(action) + discountedSum(td, state, action);
-							qTable.get(state).put(action, value);
-						}
-					}
+		backups = 0;
+		if (learning.equals(JACOBI)) {
+			jacobiValueIteration();
+		} else if (learning.equals(PRIORITIZED)) {
+			prioritizedSweeping();
+		} else {
+			boolean hasConverged = false;
+			while (!hasConverged) {
+				double maxChange = updateStates(0, numStates, vTable);
+				backups += numStates;
+				if (converged(maxChange)) {
+					hasConverged = true;
 				}
-				HashMap<RoadAction, Double> values = qTable.get(state);
-				RoadAction bestAction = null;
-				double bestValue = 0.0;
-				for (Map.Entry<RoadAction, Double> entry : values.entrySet()) {
-					if (entry.getValue() >= bestValue) {
-						// only update if the action is legal
-						if ( (entry.getKey().getActionType() == RoadActionType.MOVE
-								&&
-								state.getCurrentCity().neighbors().contains(entry.getKey().getNextCity())
-							  ) ||
-								entry.getKey().getActionType() == RoadActionType.PICKUP) {
-							bestValue = entry.getValue();
-							bestAction = entry.getKey();
-						}
+			}
+		}
+		log.info("Learnt the policy of " + numStates + " states with " + learning + " value iteration in " + backups + " backups");
+	}
+	
+	/*
+	 * Jacobi value iteration - every sweep computes the new values of all the states from the values of
+	 * the previous sweep only, so the states are independent and updated by blocks on a fork-join pool.
+	 * The result does not depend on the scheduling of the blocks: each block reports its largest change
+	 * and the convergence check takes the maximum of the blocks, in block order.
+	 */
+	private void jacobiValueIteration() {
+		ForkJoinPool pool = (threads > 1) ? new ForkJoinPool(threads) : null;
+		int blocks = Math.min(numStates, threads * BLOCKSPERTHREAD);
+		final double[] blockChange = new double[blocks];
+		final int[] blockStart = new int[blocks + 1];
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(blocks);
+		for (int b = 0; b < blocks; b++) {
+			final int block = b;
+			blockStart[b + 1] = (int)((long)numStates * (b + 1) / blocks);
+			tasks.add(new Callable<Void>() {
+				public Void call() {
+					blockChange[block] = updateStates(blockStart[block], blockStart[block + 1], previousVTable);
+					return null;
+				}
+			});
+		}
+		
+		try {
+			boolean hasConverged = false;
+			while (!hasConverged) {
+				// The values of the last sweep become the previous ones, the sweep overwrites the older ones
+				double[] values = previousVTable;
+				previousVTable = vTable;
+				vTable = values;
+				
+				if (pool != null) {
+					for (Future<Void> result : pool.invokeAll(tasks)) {
+						result.get();
+					}
+				} else {
+					for (int block = 0; block < blocks; block++) {
+						blockChange[block] = updateStates(blockStart[block], blockStart[block + 1], previousVTable);
 					}
 				}
-
-				vTable.put(state, bestValue);
-				bestActions.put(state, bestAction);
+				backups += numStates;
+				double maxChange = 0.0;
+				for (int block = 0; block < blocks; block++) {
+					maxChange = Math.max(maxChange, blockChange[block]);
+				}
+				if (converged(maxChange)) {
+					hasConverged = true;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while learning the policy", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Learning the policy failed", e.getCause());
+		} finally {
+			if (pool != null) {
+				pool.shutdown();
+			}
+		}
+	}
+	
+	/*
+	 * Prioritized sweeping - instead of sweeping over every state, always backs up the state whose value
+	 * is the furthest from its Bellman update. A change of the value of a state by delta changes the update
+	 * of each predecessor by at most discount * probability * delta, so the priority of a state is the sum
+	 * of these bounds since its last backup (starting from its actual residual): an upper bound of how much
+	 * its value can still change. Only the predecessors of a changed state are touched, and the learning
+	 * stops once every bound is below the convergence threshold.
+	 */
+	private void prioritizedSweeping() {
+		initPredecessors();
+		StatePriorityQueue queue = new StatePriorityQueue(numStates);
+		for (int state = 0; state < numStates; state++) {
+			double residual = Math.abs(backup(state, vTable) - vTable[state]);
+			backups++;
+			if (!converged(residual)) {
+				queue.put(state, residual);
+			}
+		}
+		
+		while (!queue.isEmpty() && !converged(queue.peekPriority())) {
+			int state = queue.poll();
+			double value = backup(state, vTable);
+			backups++;
+			double change = Math.abs(value - vTable[state]);
+			vTable[state] = value;
+			if (change == 0.0) {
+				continue;
+			}
+			for (int k = predecessorStart[state]; k < predecessorStart[state + 1]; k++) {
+				int predecessor = predecessorStates[k];
+				queue.put(predecessor, queue.getPriority(predecessor) + pPickup * predecessorProbabilities[k] * change);
 			}
-			if (converged(previousVTable, vTable)) {
-				hasConverged = true;
+		}
+	}
+	
+	/*
+	 * Updates the Q-values, value and best action of the states [from .. to), computing the discounted
+	 * sums with the given values (vTable itself to update in place), and returns the largest change of value
+	 */
+	private double updateStates(int from, int to, double[] values) {
+		double maxChange = 0.0;
+		for (int state = from; state < to; state++) {
+			double bestValue = backup(state, values);
+			maxChange = Math.max(maxChange, Math.abs(bestValue - values[state]));
+			vTable[state] = bestValue;
+		}
+		return maxChange;
+	}
+	
+	/*
+	 * Bellman update of a state - updates its Q-values and best action from the given values
+	 * and returns its new value (which is left to the caller to store)
+	 */
+	private double backup(int state, double[] values) {
+		int row = state * numRoadActions;
+		int bestAction = -1;
+		double bestValue = 0.0;
+		for (int action = 0; action < numRoadActions; action++) {
+			double reward = rTable[row + action];
+			// only legal actions have a reward
+			if (reward == reward) {
+				if ((action & 1) == 0) {
+					reward *= costPerKm;
+				}
+				double value = reward + discountedSum(state, action, values);
+				qTable[row + action] = value;
+				if (value >= bestValue) {
+					bestValue = value;
+					bestAction = action;
+				}
 			}
 		}
+		bestActions[state] = bestAction;
+		return bestValue;
 	}
 	
 	/*
 	 * Calculates and returns the transition probability for a given start state s1, action, and end state s2
 	 */
-	public double transitionProbability(TaskDistribution td, State s1, RoadAction action, State s2) {
+	public double transitionProbability(int s1, int action, int s2) {
 		double probability = 0.0;
+		int currentCity = s1 / numCities;
+		int nextCity = action >> 1;
 
-		if (action.getActionType() == RoadActionType.MOVE) {
-			// check if the action is legal
-			if (s1.getDestinationCity() == null && action.getNextCity() == s2.getCurrentCity() && s1.getCurrentCity().neighbors().contains(action.getNextCity())) {
-				probability = this.highestTaskPotentialNeighbour(action.getNextCity(), td);
-			}
-		} else if (action.getActionType() == RoadActionType.PICKUP) {
-			// check if pickup action is legal
-			if (s1.getDestinationCity() != null && action.getNextCity() == s2.getCurrentCity()) {
-				probability = td.probability(s1.getCurrentCity(), action.getNextCity());
+		if (nextCity == s2 / numCities) {
+			if ((action & 1) == 0) {
+				// check if the MOVE action is legal
+				if (s1 % numCities == currentCity && neighbors[currentCity * numCities + nextCity]) {
+					probability = highestTaskPotential[nextCity];
+				}
+			} else if (s1 % numCities != currentCity) {
+				// PICKUP action is legal
+				probability = taskProbabilities[currentCity * numCities + nextCity];
 			}
 		}
 
@@ -155,12 +471,13 @@ public class Reactive implements ReactiveBehavior {
 	
 	/*
 	 * Calculates the discounted sum given a current state and an action
+	 * Only goes through the successors listed in the sparse transition matrix
 	 */
-	public double discountedSum(TaskDistribution td, State currentState, RoadAction action) {
+	public double discountedSum(int currentState, int action, double[] values) {
 		double sum = 0.0;
-		for (State nextState : this.possibleStates) {
-			double tp = transitionProbability(td, currentState, action, nextState);
-			sum += tp * vTable.get(nextState);
+		int row = currentState * numRoadActions + action;
+		for (int k = successorStart[row]; k < successorStart[row + 1]; k++) {
+			sum += successorProbabilities[k] * values[successorStates[k]];
 		}
 		
 		sum = this.pPickup * sum;
@@ -168,77 +485,167 @@ public class Reactive implements ReactiveBehavior {
 	}
 	
 	/*
-	 * Implementation of the "good enough" part of the algorithm
+	 * Implementation of the "good enough" part of the algorithm, given the largest change of value of the last sweep
 	 */
-	public boolean converged(HashMap<State, Double> previousVTable, HashMap<State, Double> currentVTable) {
-		double max = 0.0;
-		for (State state : previousVTable.keySet()) {
-			double difference = Math.abs(previousVTable.get(state) - currentVTable.get(state));
-			if (difference > max) {
-				max = difference;
-			}
-		}
-		return max < 0.001;
+	public boolean converged(double maxChange) {
+		return maxChange < 0.001;
 	}
 	
 	/*
 	 * Initialize the reward table based on the task distribution probabilities
 	 */
-	private void initRTable(TaskDistribution td, Vehicle v) {
-		//Initialize R table
-		for (State state : this.possibleStates) {
-			HashMap<RoadAction, Double> stateRewards = new HashMap<RoadAction, Double>();
+	private void initRTable(TaskDistribution td) {
+		//Initialize R table, every action being illegal until proven otherwise
+		rTable = new double[numStates * numRoadActions];
+		Arrays.fill(rTable, Double.NaN);
+		for (int state = 0; state < numStates; state++) {
+			City currentCity = possibleStates[state].getCurrentCity();
+			City destinationCity = possibleStates[state].getDestinationCity();
 			
-			for (RoadAction action : this.possibleActions) {
+			for (int action = 0; action < numRoadActions; action++) {
 				double reward = 0.0;
-				City currentCity = state.getCurrentCity();
-				City actionNextCity = action.getNextCity();
-				if (action.getActionType() == RoadActionType.MOVE && state.getDestinationCity() == null) {
-					if (actionNextCity != null && currentCity.hasNeighbor(actionNextCity)) {
-						// Legal MOVE action, reward is negative - only cost for moving to next city
-						reward -= currentCity.distanceTo(actionNextCity) * v.costPerKm();
-						stateRewards.put(action, reward);
+				City actionNextCity = possibleActions[action].getNextCity();
+				if (possibleActions[action].getActionType() == RoadActionType.MOVE && destinationCity == null) {
+					if (currentCity.hasNeighbor(actionNextCity)) {
+						// Legal MOVE action, reward is negative - only cost for moving to next city (per unit of cost per km)
+						reward -= currentCity.distanceTo(actionNextCity);
+						rTable[state * numRoadActions + action] = reward;
 					}
-				} else if (action.getActionType() == RoadActionType.PICKUP && state.getDestinationCity() != null) {
-					if (action.getNextCity() == state.getDestinationCity()) {
+				} else if (possibleActions[action].getActionType() == RoadActionType.PICKUP && destinationCity != null) {
+					if (actionNextCity == destinationCity) {
 						// Legal PICKUP action, reward is (profit from delivery - travel cost)						
-						reward += td.reward(currentCity, state.getDestinationCity()) - currentCity.distanceTo(state.getDestinationCity());
-						stateRewards.put(action, reward);
+						reward += td.reward(currentCity, destinationCity) - currentCity.distanceTo(destinationCity);
+						rTable[state * numRoadActions + action] = reward;
 					}		
 				}
 			}
-			this.rTable.put(state, stateRewards);
 		}
 	}
 	
-	// Agent's Behaviors
 	/*
-	 * Intelligent agent's act - decides on an action depending on the state-based best action learnt offline
+	 * Builds the sparse transition matrix of the legal (state, action) pairs
+	 * Every action leads to the states of its next city, so only those are checked - the matrix is built
+	 * in time proportional to its size instead of going through every state for every pair
 	 */
-	private Action intelligentAgentAct(Vehicle vehicle, Task availableTask) {
-		Action action;
-		
-		State currentState;
-		if (availableTask != null) {
-			currentState = new State(vehicle.getCurrentCity(), availableTask.deliveryCity);
-		} else {
-			currentState = new State(vehicle.getCurrentCity());			
+	private void initTransitionMatrix() {
+		int rows = numStates * numRoadActions;
+		successorStart = new int[rows + 1];
+		int size = 0;
+		for (int row = 0; row < rows; row++) {
+			double reward = rTable[row];
+			if (reward == reward && transitionProbability(row / numRoadActions, row % numRoadActions, (row % numRoadActions >> 1) * numCities) > 0) {
+				size += numCities;
+			}
+			successorStart[row + 1] = size;
 		}
 		
-		RoadAction bestAction = bestActions.get(currentState);
+		successorStates = new int[size];
+		successorProbabilities = new double[size];
+		for (int row = 0; row < rows; row++) {
+			int state = row / numRoadActions;
+			int action = row % numRoadActions;
+			int firstState = (action >> 1) * numCities;
+			int k = successorStart[row];
+			for (int nextState = firstState; k < successorStart[row + 1]; nextState++, k++) {
+				successorStates[k] = nextState;
+				successorProbabilities[k] = transitionProbability(state, action, nextState);
+			}
+		}
+	}
+	
+	/*
+	 * Builds the transposed transition matrix, listing the predecessors of every state
+	 */
+	private void initPredecessors() {
+		predecessorStart = new int[numStates + 1];
+		for (int k = 0; k < successorStates.length; k++) {
+			predecessorStart[successorStates[k] + 1]++;
+		}
+		for (int state = 0; state < numStates; state++) {
+			predecessorStart[state + 1] += predecessorStart[state];
+		}
 		
-		if(bestAction.getActionType() == RoadActionType.PICKUP) {
-			if (availableTask != null) {
-				currentState.setDestinationCity(availableTask.deliveryCity);
-				action = new Pickup(availableTask);
-			} else {
-				action = new Move(vehicle.getCurrentCity().randomNeighbor(random));
+		predecessorStates = new int[successorStates.length];
+		predecessorProbabilities = new double[successorStates.length];
+		int[] next = Arrays.copyOf(predecessorStart, numStates);
+		for (int row = 0; row < numStates * numRoadActions; row++) {
+			for (int k = successorStart[row]; k < successorStart[row + 1]; k++) {
+				int position = next[successorStates[k]]++;
+				predecessorStates[position] = row / numRoadActions;
+				predecessorProbabilities[position] = successorProbabilities[k];
+			}
+		}
+	}
+	
+	/*
+	 * Reads the task probabilities and the neighbors of the cities into flat tables, so that the
+	 * transition probabilities are computed without going through the topology
+	 */
+	private void initTransitionModel(TaskDistribution td) {
+		taskProbabilities = new double[numCities * numCities];
+		neighbors = new boolean[numCities * numCities];
+		highestTaskPotential = new double[numCities];
+		for (City from : allCities) {
+			for (City to : allCities) {
+				taskProbabilities[from.id * numCities + to.id] = td.probability(from, to);
+			}
+			for (City neighbor : from.neighbors()) {
+				neighbors[from.id * numCities + neighbor.id] = true;
 			}
-		} else {			
-			action = new Move(bestAction.getNextCity());	
+			highestTaskPotential[from.id] = highestTaskPotentialNeighbour(from, td);
 		}
+	}
+	
+	/*
+	 * Compiles the best actions of the states into a new policy table used by act
+	 */
+	private void compilePolicy() {
+		policyTable = new int[numCities][numCities + 1];
+		for (City city : allCities) {
+			for (int destination = 0; destination <= numCities; destination++) {
+				int state = city.id * numCities + ((destination == numCities) ? city.id : destination);
+				int action = bestActions[state];
+				int entry;
+				if (action < 0) {
+					// States where no action is worth anything behave like a PICKUP without a task - move at random
+					entry = RANDOMMOVE;
+				} else if (possibleActions[action].getActionType() == RoadActionType.PICKUP) {
+					entry = (destination == numCities) ? RANDOMMOVE : PICKUP;
+				} else {
+					entry = possibleActions[action].getNextCity().id;
+				}
+				policyTable[city.id][destination] = entry;
+			}
+		}
+	}
+	
+	// Creates the move action to every city
+	private void initMoves() {
+		moveTo = new Move[numCities];
+		for (City city : allCities) {
+			moveTo[city.id] = new Move(city);
+		}
+	}
+	
+	// Agent's Behaviors
+	/*
+	 * Intelligent agent's act - decides on an action depending on the state-based best action learnt offline
+	 * Only allocates the Pickup of a task, moves come from the shared move actions
+	 */
+	private Action intelligentAgentAct(Vehicle vehicle, Task availableTask) {
+		int[][] policy = (vehicle.id() < vehiclePolicies.length) ? vehiclePolicies[vehicle.id()] : null;
+		if (policy == null) {
+			throw new IllegalStateException("No policy was learnt for vehicle " + vehicle.name());
+		}
+		City currentCity = vehicle.getCurrentCity();
+		int entry = policy[currentCity.id][(availableTask != null) ? availableTask.deliveryCity.id : numCities];
 		
-		return action;
+		if (entry >= 0) {
+			return moveTo[entry];
+		} else if (entry == PICKUP) {
+			return new Pickup(availableTask);
+		}
+		return moveTo[currentCity.randomNeighbor(random).id];
 	}
 	
 	/*
@@ -248,13 +655,10 @@ public class Reactive implements ReactiveBehavior {
 	private Action dummyAgentAct(Vehicle vehicle, Task availableTask) {
 		Action action;
 		
-		State currentState;
 		if (availableTask != null) {
-			currentState = new State(vehicle.getCurrentCity(), availableTask.deliveryCity);
 			action = new Pickup(availableTask);
 		} else {
-			currentState = new State(vehicle.getCurrentCity());		
-			action = new Move(vehicle.getCurrentCity().randomNeighbor(random));
+			action = moveTo[vehicle.getCurrentCity().randomNeighbor(random).id];
 		}
 		
 		return action;
@@ -268,7 +672,7 @@ public class Reactive implements ReactiveBehavior {
 
 		if (availableTask == null || random.nextDouble() > pPickup) {
 			City currentCity = vehicle.getCurrentCity();
-			action = new Move(currentCity.randomNeighbor(random));
+			action = moveTo[currentCity.randomNeighbor(random).id];
 		} else {
 			action = new Pickup(availableTask);
 
@@ -278,50 +682,53 @@ public class Reactive implements ReactiveBehavior {
 	
 	// Functions to initialize tables
 	private void initQTable() {
-		qTable = new HashMap<State, HashMap<RoadAction, Double>>();
-		for (State state : this.possibleStates) {
-			qTable.put(state, new HashMap<RoadAction, Double>());
-			for (RoadAction action : this.possibleActions) {
-				qTable.get(state).put(action, 0.0);
-			}
-		}
+		qTable = new double[numStates * numRoadActions];
 	}
 	
 	// Initialize V-table with random values between 0.0 and 1.0
 	private void initVTable() {
-		vTable = new HashMap<State, Double>();
-		for (State state : this.possibleStates) {
-			vTable.put(state, random.nextDouble());
+		vTable = new double[numStates];
+		previousVTable = new double[numStates];
+		for (int state = 0; state < numStates; state++) {
+			vTable[state] = random.nextDouble();
 		}
 	}
 	
 	private void initBestActionsTable() {
-		bestActions = new HashMap<State, RoadAction>();
-		for (State state : this.possibleStates) {
-			bestActions.put(state, null);
-		}
+		bestActions = new int[numStates];
+		Arrays.fill(bestActions, -1);
 	}
 	
 	// HELPER FUNCTIONS
 	private void initPossibleActions(List<City> cities) {
+		numCities = cities.size();
+		numRoadActions = 2 * numCities;
+		possibleActions = new RoadAction[numRoadActions];
 		for (City city : cities) {
-			this.possibleActions.add(new RoadAction(city, RoadActionType.MOVE));
-			this.possibleActions.add(new RoadAction(city, RoadActionType.PICKUP));
+			possibleActions[city.id * 2] = new RoadAction(city, RoadActionType.MOVE);
+			possibleActions[city.id * 2 + 1] = new RoadAction(city, RoadActionType.PICKUP);
 		}
 	}
 	
 	private void initPossibleStates(List<City> cities) {
+		numStates = numCities * numCities;
+		possibleStates = new State[numStates];
 		for (City city1 : cities) {
 			for (City city2: cities) {
 				if(city1 == city2) {
-					this.possibleStates.add(new State(city1));
+					possibleStates[stateIndex(city1, null)] = new State(city1);
 				} else {
-					this.possibleStates.add(new State(city1, city2));
+					possibleStates[stateIndex(city1, city2)] = new State(city1, city2);
 				}
 			}
 		}
 	}
 	
+	// Number of the state of a vehicle in currentCity with a task to destinationCity (null if there is no task)
+	private int stateIndex(City currentCity, City destinationCity) {
+		return currentCity.id * numCities + ((destinationCity == null) ? currentCity.id : destinationCity.id);
+	}
+	
 	private double highestTaskPotentialNeighbour(City neighbor, TaskDistribution td) {
 		double max = 0.0;
 		for (City c : this.allCities) {
@@ -0,0 +1,118 @@
+package template;
+
+/*
+ * Indexed max-priority queue of states (0 .. numStates - 1) for the prioritized sweeping -
+ * a binary heap with the position of every state in it, so that the priority of a queued
+ * state can be raised in place. Ties are broken by lowest state number, so the order in
+ * which states come out only depends on the priorities.
+ */
+public class StatePriorityQueue {
+
+	private int[] heap;
+	// Position of every state in the heap, -1 if the state is not queued
+	private int[] position;
+	private double[] priority;
+	private int size;
+
+	public StatePriorityQueue(int numStates) {
+		this.heap = new int[numStates];
+		this.position = new int[numStates];
+		this.priority = new double[numStates];
+		for (int state = 0; state < numStates; state++) {
+			this.position[state] = -1;
+		}
+		this.size = 0;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/*
+	 * Priority of the state with the highest priority (the queue must not be empty)
+	 */
+	public double peekPriority() {
+		return priority[heap[0]];
+	}
+
+	public double getPriority(int state) {
+		return (position[state] < 0) ? 0.0 : priority[state];
+	}
+
+	/*
+	 * Queues the state with the given priority, or changes the priority of a queued state
+	 */
+	public void put(int state, double statePriority) {
+		if (position[state] < 0) {
+			heap[size] = state;
+			position[state] = size;
+			size++;
+			priority[state] = statePriority;
+			siftUp(position[state]);
+		} else if (statePriority >= priority[state]) {
+			priority[state] = statePriority;
+			siftUp(position[state]);
+		} else {
+			priority[state] = statePriority;
+			siftDown(position[state]);
+		}
+	}
+
+	/*
+	 * Removes and returns the state with the highest priority (the queue must not be empty)
+	 */
+	public int poll() {
+		int top = heap[0];
+		size--;
+		position[top] = -1;
+		if (size > 0) {
+			heap[0] = heap[size];
+			position[heap[0]] = 0;
+			siftDown(0);
+		}
+		return top;
+	}
+
+	// Whether the state at heap position i has to come out before the one at position j
+	private boolean before(int i, int j) {
+		double pi = priority[heap[i]];
+		double pj = priority[heap[j]];
+		return pi > pj || (pi == pj && heap[i] < heap[j]);
+	}
+
+	private void siftUp(int i) {
+		while (i > 0) {
+			int parent = (i - 1) >> 1;
+			if (!before(i, parent)) {
+				break;
+			}
+			swap(i, parent);
+			i = parent;
+		}
+	}
+
+	private void siftDown(int i) {
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= size) {
+				break;
+			}
+			if (child + 1 < size && before(child + 1, child)) {
+				child++;
+			}
+			if (!before(child, i)) {
+				break;
+			}
+			swap(i, child);
+			i = child;
+		}
+	}
+
+	private void swap(int i, int j) {
+		int state = heap[i];
+		heap[i] = heap[j];
+		heap[j] = state;
+		position[heap[i]] = i;
+		position[heap[j]] = j;
+	}
+}